@@ -0,0 +1,32 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import sim.engine.*;
+
+/** An ActionPac does whatever the model's actions[tag] says, every step: that's the joystick or keyboard in
+    the GUI, or whoever is training him.  Like a regular Pac, he delays an action he can't do yet and keeps
+    doing the last one meanwhile. */
+
+public class ActionPac extends Pac
+    {
+    private static final long serialVersionUID = 1;
+
+    public ActionPac(PacMan pacman, int tag, ExplorationMap env)
+        {
+        super(pacman, tag, env);
+        }
+
+    protected void doPolicyStep(SimState state)
+        {
+        nextAction = pacman.getNextAction(tag);
+
+        if (isPossibleToDoAction(nextAction))
+            performAction(nextAction);
+        else if (isPossibleToDoAction(lastAction))
+            performAction(lastAction);
+        }
+    }
@@ -6,7 +6,6 @@
 
 package sim.app.pacman;
 
-import sim.field.grid.IntGrid2D;
 import sim.portrayal.Oriented2D;
 import sim.util.Double2D;
 import sim.util.MutableDouble2D;
@@ -21,17 +20,24 @@ import sim.util.MutableDouble2D;
     (as the agent steps through the discretized locations to move from grid location to grid location,
     how fine the discretization is determines how many steps he must move to get from one grid
     location to another, and thus his speed going through the maze).
+
+    <p>Internally the location is kept in fixed point, as the integers fx and fy counting UNITS per grid
+    location.  UNITS is divisible by every discretization the game uses (9, 10, and 15), so a move is an
+    exact integer addition and never drifts.  'location' and the Double2D in pacman.agents are views of
+    fx and fy, kept up to date by every move; the Double2Ds come from a cache in the MazeGraph, so moving
+    doesn't allocate anything.
 */
 
 public abstract class Agent implements Oriented2D
     {
     private static final long serialVersionUID = 1;
     
-    public double pacStartX = 13.5;
-    public double pacStartY = 25.0;
+    /** Where the Pacs start, from the maze's layout. */
+    public double pacStartX;
+    public double pacStartY;
     
-    public double positionPacX = pacStartX;
-    public double positionPacY = pacStartY;
+    public double positionPacX;
+    public double positionPacY;
 
     /** The Action "Go North" */
     public static final int N = 0;
@@ -50,15 +56,31 @@ public abstract class Agent implements Oriented2D
     public MutableDouble2D location;
     // The PacMan simulation state
     PacMan pacman;
-    /** The agent's discretization. */
+    /** The agent's slot in pacman.occupancy. */
+    int slot;
+
+    /** The agent's discretization.  It must divide UNITS. */
     public int discretization = 10;
 
+    /** The number of fixed-point units per grid location.  Divisible by 9, 10, and 15. */
+    public static final int UNITS = 90;
+    /** The agent's x location in fixed point, UNITS per grid location.  location.x is fx / UNITS. */
+    public int fx;
+    /** The agent's y location in fixed point, UNITS per grid location.  location.y is fy / UNITS. */
+    public int fy;
+
     /** The agent's maximum velocity.  Determined by discretization.  */
     public double speed()
         {
         return 1.0 / discretization;
         }
 
+    /** The agent's maximum velocity in fixed-point units.  Determined by discretization.  */
+    public int step()
+        {
+        return UNITS / discretization;
+        }
+
     /** Where the agent starts when the game is reset. */
     public abstract Double2D getStartLocation();
 
@@ -67,9 +89,12 @@ public abstract class Agent implements Oriented2D
     public Agent(PacMan pacman)
         {
         this.pacman = pacman;
+        pacStartX = pacman.graph.getPacStart().x;
+        pacStartY = pacman.graph.getPacStart().y;
         Double2D loc = getStartLocation();
         this.location = new MutableDouble2D(loc);
-        pacman.agents.setObjectLocation(this, loc);
+        slot = pacman.occupancy.add(this);
+        setLocation((int) Math.round(loc.x * UNITS), (int) Math.round(loc.y * UNITS));
         }
 
     /** Returns the "orientation" of the agent. */
@@ -93,43 +118,114 @@ public abstract class Agent implements Oriented2D
         are discretized to the discretization locations. */
     public void changeLocation(double x, double y)
         {
-        // locations can get off a bit because of double floating point error.  This keeps them in check:
-        location.x = (((int)(Math.round(x * discretization)))) / (double) discretization;
-        location.y = (((int)(Math.round(y * discretization)))) / (double) discretization;
-        pacman.agents.setObjectLocation(this, new Double2D(location));
+        int step = step();
+        setLocation((int)(Math.round(x * discretization)) * step, (int)(Math.round(y * discretization)) * step);
+        }
+
+    /** Moves the agent to the given fixed-point location, and updates location, positionPacX/Y, pacman.agents,
+        and pacman.occupancy to match. */
+    public void setLocation(int fx, int fy)
+        {
+        this.fx = fx;
+        this.fy = fy;
+        location.x = fx / (double) UNITS;
+        location.y = fy / (double) UNITS;
         positionPacX = location.x;
         positionPacY = location.y;
+        pacman.agents.setObjectLocation(this, pacman.graph.getPoint(fx, fy));
+        pacman.occupancy.move(slot, fx / UNITS, fy / UNITS);
+        if (this instanceof Pac) pacman.pacMoves++;
         }
 
-    protected MutableDouble2D nextCell(int nextAction)
+    /** The number of ints an agent's state takes up in a Snapshot. */
+    static final int STATE_SIZE = 8;
+
+    /** Writes the state of the agent into state[offset] ... state[offset + STATE_SIZE - 1], for a Snapshot.
+        Subclasses with more state add theirs after ours. */
+    void saveState(int[] state, int offset)
+        {
+        state[offset] = fx;
+        state[offset + 1] = fy;
+        state[offset + 2] = discretization;
+        state[offset + 3] = lastAction;
+        }
+
+    /** Reads the state of the agent back from what saveState(...) wrote, and moves the agent there. */
+    void restoreState(int[] state, int offset)
+        {
+        discretization = state[offset + 2];
+        lastAction = state[offset + 3];
+        setLocation(state[offset], state[offset + 1]);
+        }
+
+    /** Sets result to the grid location one over from ours in the direction of nextAction, and returns it. */
+    protected MutableDouble2D nextCell(int nextAction, MutableDouble2D result)
         {
-        double nx = 0, ny = 0;
         switch (nextAction)
             {
             case N:
-                nx = location.x;
-                ny = location.y - 1;
+                return result.setTo(location.x, location.y - 1);
+            case E:
+                return result.setTo(location.x + 1, location.y);
+            case S:
+                return result.setTo(location.x, location.y + 1);
+            case W:
+                return result.setTo(location.x - 1, location.y);
+            default:
+                throw new RuntimeException("default case should never occur");
+            }
+        }
+
+    protected MutableDouble2D nextCell(int nextAction)
+        {
+        return nextCell(nextAction, new MutableDouble2D());
+        }
+
+    /** Performs a given action (N/W/S/E/NOTHING), moving the agent appropriately. */
+    public void performAction(int action)
+        {
+        int step = step();
+        int x = fx;
+        int y = fy;
+
+        // if we changed speed partway between grid locations, we're not on our own discretization,
+        // and have to be rounded onto it as we move.  Rare, so we do it the old way.
+        if (x % step != 0 || y % step != 0)
+            {
+            offGridAction(action);
+            return;
+            }
+
+        int width = pacman.graph.getWidth() * UNITS;
+        int height = pacman.graph.getHeight() * UNITS;
+        switch (action)
+            {
+            // we allow toroidal actions
+            case N:
+                y -= step;
+                if (y < 0) y += height;
                 break;
             case E:
-                nx = location.x + 1;
-                ny = location.y;
+                x += step;
+                if (x >= width) x -= width;
                 break;
             case S:
-                nx = location.x;
-                ny = location.y + 1;
+                y += step;
+                if (y >= height) y -= height;
                 break;
             case W:
-                nx = location.x - 1;
-                ny = location.y;
+                x -= step;
+                if (x < 0) x += width;
                 break;
             default:
                 throw new RuntimeException("default case should never occur");
             }
-        return new MutableDouble2D(nx, ny);
+        setLocation(x, y);
+        lastAction = action;
         }
 
-    /** Performs a given action (N/W/S/E/NOTHING), moving the agent appropriately. */
-    public void performAction(int action)
+    /** Performs an action from a location which isn't on our discretization, rounding onto it. */
+    void offGridAction(int action)
         {
         double x = location.x;
         double y = location.y;
@@ -163,8 +259,7 @@ public abstract class Agent implements Oriented2D
             {
             return false;  // no way
             }
-        IntGrid2D maze = pacman.maze;
-        int[][] field = maze.field;
+        MazeGraph graph = pacman.graph;
 
         // the Agents grid is discretized exactly on 1x1 boundaries so we can use floor rather than divide
 
@@ -178,18 +273,8 @@ public abstract class Agent implements Oriented2D
         // for some actions we can only do the action if we're not straddling, or if our previous action was NOTHING
         if ((x0 == x1 && y0 == y1) || lastAction == NOTHING)
             {
-            switch (action)
-                {
-                // we allow toroidal actions
-                case N:
-                    return (field[maze.stx(x0)][maze.sty(y0 - 1)] == 0);
-                case E:
-                    return (field[maze.stx(x0 + 1)][maze.sty(y0)] == 0);
-                case S:
-                    return (field[maze.stx(x0)][maze.sty(y0 + 1)] == 0);
-                case W:
-                    return (field[maze.stx(x0 - 1)][maze.sty(y0)] == 0);
-                }
+            // we allow toroidal actions: the graph knows where the tunnels go
+            return graph.canMove(x0, y0, action);
             } // for other actions we're continuing to do what we did last time.
         // assuming we're straddling, this should always be allowed unless our way is blocked
         else if (action == lastAction)
@@ -198,13 +283,13 @@ public abstract class Agent implements Oriented2D
                 {
                 // we allow toroidal actions
                 case N:  // use y0
-                    return (field[maze.stx(x0)][maze.sty(y0)] == 0);
+                    return graph.isOpen(x0, y0);
                 case E:  // use x1
-                    return (field[maze.stx(x1)][maze.sty(y0)] == 0);
+                    return graph.isOpen(x1, y0);
                 case S:  // use y1
-                    return (field[maze.stx(x0)][maze.sty(y1)] == 0);
+                    return graph.isOpen(x0, y1);
                 case W:  // use x0
-                    return (field[maze.stx(x0)][maze.sty(y0)] == 0);
+                    return graph.isOpen(x0, y0);
                 }
             } // last there are reversal actions.  Generally these are always allowed as well.
         else if ((action == N && lastAction == S) ||
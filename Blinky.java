@@ -17,7 +17,7 @@ public class Blinky extends Ghost
     {
     private static final long serialVersionUID = 1;
 
-    public Double2D getStartLocation() { return new Double2D(13.5, 13); }
+    public Double2D getStartLocation() { Double2D exit = pacman.graph.getHouseExit(); return new Double2D(exit.x, exit.y - 3); }
 
     public Blinky(PacMan pacman) 
         {
@@ -22,7 +22,7 @@ public class Clyde extends Blinky
 
     public static final int DIST = 8;
         
-    public Double2D getStartLocation() { return new Double2D(14.5, 16); }
+    public Double2D getStartLocation() { Double2D exit = pacman.graph.getHouseExit(); return new Double2D(exit.x + 1, exit.y); }
 
     public Double2D scatterTarget;  // only Clyde uses (and sets) this for now
 
@@ -30,7 +30,7 @@ public class Clyde extends Blinky
         {
         super(pacman);
         waiting = INITIAL_WAITING_PERIOD;
-        this.scatterTarget = new Double2D(0, 32);  // bottom left
+        this.scatterTarget = new Double2D(0, pacman.graph.getHeight() - 3);  // bottom left
         }
         
     public Double2D getTarget()
@@ -0,0 +1,188 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+
+/** DecisionTable remembers which way a ghost which isn't frightened goes at a junction, given the way
+    he came in and where his target is.  Ghost.step() used to work this out from scratch at every junction;
+    now it's usually a table lookup, and the answer is always the same as the greedy rule in Ghost would give.
+
+    <p>The catch is that targets aren't grid locations: they follow the Pac, who moves in ninths of a grid
+    location.  So the table is keyed by the target's <i>tile</i> (the grid location it's in), and holds the
+    ghost's decision only if it's the same for every target in that tile.  The greedy rule compares squared
+    distances from the target to the candidate next locations, and the difference of two of those is linear
+    in the target, so if all the differences have the same sign at the four corners of the tile, they have it
+    all over the tile.  If not (a tie line goes through the tile) the entry is marked MIXED and Ghost works the
+    decision out itself.  Targets right on a grid location are common (the Pac sitting still, Clyde's scatter
+    target) and get a second table of their own, one entry per grid location.
+
+    <p>Entries are worked out, with exact integer arithmetic, the first time they're asked for.  A MazeGraph
+    never changes so the table is shared by all games on the maze, and filling it in from several threads at
+    once is harmless: they all write the same values.
+
+    <p>The table has an entry for every junction, heading, and grid location, which is fine for the classic mazes
+    but far too many for a big generated one.  Past MAX_ENTRIES it isn't made at all, and getAction(...) always
+    leaves the decision to the ghost.
+*/
+
+public class DecisionTable
+    {
+    /** Stored for entries which haven't been worked out yet. */
+    static final byte UNKNOWN = 0;
+    /** Stored for entries where the decision depends on where in the tile the target is. */
+    static final byte MIXED = 5;
+    /** How close to the edge of a tile a target may be and still use the table for the inside of the tile. */
+    static final double EDGE = 1.0e-6;
+    /** The most entries a table may have, in each of tiles and points. */
+    static final long MAX_ENTRIES = 1L << 24;
+
+    MazeGraph graph;
+    int width;
+    int height;
+    /** For each junction, heading, and target tile, the action + 1 for targets inside the tile, or UNKNOWN or MIXED. */
+    byte[] tiles;
+    /** For each junction, heading, and target grid location, the action + 1 for targets right on it, or UNKNOWN. */
+    byte[] points;
+
+    public DecisionTable(MazeGraph graph)
+        {
+        this.graph = graph;
+        width = graph.getWidth();
+        height = graph.getHeight();
+        if ((long) graph.getNumJunctions() * 4 * width * height <= MAX_ENTRIES)
+            {
+            tiles = new byte[graph.getNumJunctions() * 4 * width * height];
+            points = new byte[tiles.length];
+            }
+        }
+
+    /** Returns the action a ghost which isn't frightened takes at the junction (x, y), having come in with
+        the action heading, to get closest to (tx, ty).  Returns Agent.NOTHING if the table can't tell, in which
+        case the ghost has to work it out himself. */
+    public int getAction(int x, int y, int heading, double tx, double ty)
+        {
+        if (tiles == null) return Agent.NOTHING;
+        int junction = graph.getJunction(graph.location(x, y));
+        if (junction == MazeGraph.NONE || heading < Agent.N || heading > Agent.W) return Agent.NOTHING;
+        if (!(tx >= 0 && tx < width && ty >= 0 && ty < height)) return Agent.NOTHING;
+        int X = (int) tx;
+        int Y = (int) ty;
+        int index = ((junction * 4 + heading) * height + Y) * width + X;
+        if (tx == X && ty == Y)
+            {
+            if (points[index] == UNKNOWN) points[index] = (byte)(pointAction(x, y, heading, X, Y) + 1);
+            return points[index] - 1;
+            }
+        double fx = tx - X;
+        double fy = ty - Y;
+        if (fx < EDGE || fx > 1 - EDGE || fy < EDGE || fy > 1 - EDGE) return Agent.NOTHING;
+        if (tiles[index] == UNKNOWN) tiles[index] = tileAction(x, y, heading, X, Y);
+        return tiles[index] == MIXED ? Agent.NOTHING : tiles[index] - 1;
+        }
+
+    //// The greedy rule of Ghost.step(), in integers.  Coordinates are multiplied by scale so that the points
+    //// we look at are whole numbers; the maze's width and height are scaled to match.
+
+    /** Continuous2D.stx(...) */
+    static int wrap(int x, int w) { if (x >= 0) { if (x < w) return x; return x - w; } return x + w; }
+
+    /** Continuous2D.tdx(...) */
+    static int delta(int a, int b, int w)
+        {
+        if (2 * Math.abs(a - b) <= w) return a - b;
+        int d = wrap(a, w) - wrap(b, w);
+        if (d * 2 > w) return d - w;
+        if (d * 2 < -w) return d + w;
+        return d;
+        }
+
+    /** Whether the ghost uses the toroidal distance from the candidate next location nx to the target tx. */
+    static boolean toroidal(int tx, int nx, int w, int scale) { return Math.abs(wrap(tx - nx, w)) <= Ghost.MIN_DIST_FOR_TOROIDAL * scale; }
+
+    /** The squared distance the ghost uses from the candidate next location (nx, ny) to the target (tx, ty). */
+    static long distance(int tx, int ty, int nx, int ny, int w, int h, int scale)
+        {
+        long dx, dy;
+        if (toroidal(tx, nx, w, scale)) { dx = delta(tx, nx, w); dy = delta(ty, ny, h); }
+        else { dx = tx - nx; dy = ty - ny; }
+        return dx * dx + dy * dy;
+        }
+
+    /** The candidate next location's x for the action from x: not wrapped, just like in Ghost.step(). */
+    static int nextX(int x, int action) { return action == Agent.E ? x + 1 : action == Agent.W ? x - 1 : x; }
+    static int nextY(int y, int action) { return action == Agent.S ? y + 1 : action == Agent.N ? y - 1 : y; }
+
+    /** The actions the ghost may choose from, as a bitmask. */
+    int choices(int x, int y, int heading) { return graph.getMoves(x, y) & ~(1 << Ghost.reverseOf(heading)); }
+
+    /** Works out the decision for the target right on (X, Y).  Ties go to the first action, as in Ghost.step(). */
+    int pointAction(int x, int y, int heading, int X, int Y)
+        {
+        int choices = choices(x, y, heading);
+        int best = Ghost.reverseOf(heading);
+        long bestDistance = Long.MAX_VALUE;
+        for(int action = Agent.N; action <= Agent.W; action++)
+            if ((choices & (1 << action)) != 0)
+                {
+                long d = distance(X, Y, nextX(x, action), nextY(y, action), width, height, 1);
+                if (d < bestDistance) { best = action; bestDistance = d; }
+                }
+        return best;
+        }
+
+    /** Works out the decision for targets inside the tile (X, Y), or MIXED if it isn't the same all over. */
+    byte tileAction(int x, int y, int heading, int X, int Y)
+        {
+        int choices = choices(x, y, heading);
+        if (Integer.bitCount(choices) <= 1) return (byte)(pointAction(x, y, heading, X, Y) + 1);
+
+        // For each candidate find the point c such that the squared distance is |target - c|^2 all over the tile.
+        // The toroidal and wrapping choices only change on whole or half grid locations, so we look at them a
+        // quarter in from each side (in coordinates times 4), and give up if they aren't the same.
+        int w = width * 4;
+        int h = height * 4;
+        long[] cx = new long[4];
+        long[] cy = new long[4];
+        for(int action = Agent.N; action <= Agent.W; action++)
+            {
+            if ((choices & (1 << action)) == 0) continue;
+            int nx = nextX(x, action) * 4;
+            int ny = nextY(y, action) * 4;
+            int lo = X * 4 + 1;
+            int hi = X * 4 + 3;
+            boolean t = toroidal(lo, nx, w, 4);
+            if (t != toroidal(hi, nx, w, 4)) return MIXED;
+            if (!t) { cx[action] = nx / 4; cy[action] = ny / 4; continue; }
+            int shiftX = delta(lo, nx, w) - (lo - nx);
+            if (shiftX != delta(hi, nx, w) - (hi - nx)) return MIXED;
+            int shiftY = delta(Y * 4 + 1, ny, h) - (Y * 4 + 1 - ny);
+            if (shiftY != delta(Y * 4 + 3, ny, h) - (Y * 4 + 3 - ny)) return MIXED;
+            cx[action] = (nx - shiftX) / 4;         // the shifts are whole widths and heights
+            cy[action] = (ny - shiftY) / 4;
+            }
+
+        // the candidate which is strictly closest at all four corners is strictly closest all over the tile
+        for(int action = Agent.N; action <= Agent.W; action++)
+            {
+            if ((choices & (1 << action)) == 0) continue;
+            boolean closest = true;
+            for(int other = Agent.N; other <= Agent.W && closest; other++)
+                {
+                if (other == action || (choices & (1 << other)) == 0) continue;
+                for(int corner = 0; corner < 4 && closest; corner++)
+                    {
+                    long px = X + (corner & 1);
+                    long py = Y + (corner >> 1);
+                    long d = (px - cx[action]) * (px - cx[action]) + (py - cy[action]) * (py - cy[action]);
+                    long e = (px - cx[other]) * (px - cx[other]) + (py - cy[other]) * (py - cy[other]);
+                    if (d >= e) closest = false;
+                    }
+                }
+            if (closest) return (byte)(action + 1);
+            }
+        return MIXED;
+        }
+    }
@@ -0,0 +1,133 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import java.awt.*;
+
+/** DirtyRegions works out which parts of the display changed since the last frame, so that only those need to be
+    painted again.  From one frame to the next only the Pacs and the ghosts move, a dot or two is eaten, and the
+    scores change.  So the regions are where each agent was and where it is now, the dots which are gone, and the
+    strip at the top where the Overlay writes the scores.  Everything else (the maze, the other dots) is the same as
+    it was, and painting just the regions costs in the number of agents rather than the number of dots.
+
+    <p>Sometimes the whole display has to be painted instead: the first time, when the maze changes, when dots come
+    back (a new level, or a reset), when the number of agents changes, or when the display is scaled.
+    update(...) says so by returning false.
+
+    <p>Regions are in the pixels of the display, which draws the maze grid cellWidth by cellHeight pixels to a cell,
+    with the agents and the dots centered in their cells as PacManWithUI attaches them. */
+
+public class DirtyRegions
+    {
+    /** How far around its location, in cells, an agent may be drawn.  The ghosts are two cells wide; we add half
+        a cell, which also allows for the display lagging a step or so behind the model. */
+    public static final double AGENT_EXTENT = 1.5;
+
+    /** How far around its location, in cells, a dot or an energizer may be drawn. */
+    public static final double DOT_EXTENT = 0.75;
+
+    Rectangle[] agentRects = new Rectangle[0];
+    long[] dots;
+    long[] energizers;
+    MazeGraph graph;
+    double cellWidth;
+    double cellHeight;
+
+    /** Forgets the last frame, so that the next update(...) asks for the whole display to be painted. */
+    public void reset()
+        {
+        graph = null;
+        }
+
+    /** Adds to regions the parts of the display which changed since the last call, plus the given region of the
+        scores, and returns true, or returns false if the whole display should be painted.  Either way, remembers the
+        game as it is now for next time. */
+    public boolean update(PacMan pacman, double cellWidth, double cellHeight, Rectangle scores, java.util.List<Rectangle> regions)
+        {
+        int numAgents = pacman.pacs.length + pacman.ghosts.length;
+        DotField dotField = pacman.dots;
+        boolean full = (graph != pacman.graph || this.cellWidth != cellWidth || this.cellHeight != cellHeight ||
+            agentRects.length != numAgents || dots == null || dots.length != dotField.dots.length);
+        graph = pacman.graph;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+
+        // dots which are gone need painting over; dots which came back mean a new level
+        if (!full)
+            {
+            int width = dotField.getWidth();
+            for(int i = 0; i < dots.length; i++)
+                {
+                long was = dots[i] | energizers[i];
+                long is = dotField.dots[i] | dotField.energizers[i];
+                if ((is & ~was) != 0) { full = true; break; }
+                long gone = was & ~is;
+                while(gone != 0)
+                    {
+                    int location = (i << 6) + Long.numberOfTrailingZeros(gone);
+                    gone &= gone - 1;
+                    regions.add(cell(location % width, location / width, DOT_EXTENT));
+                    }
+                }
+            }
+
+        // each agent, where it was and where it is now
+        if (agentRects.length != numAgents) agentRects = new Rectangle[numAgents];
+        for(int i = 0; i < numAgents; i++)
+            {
+            Agent agent = (i < pacman.pacs.length ? (Agent) pacman.pacs[i] : pacman.ghosts[i - pacman.pacs.length]);
+            Rectangle rect = (agent == null ? null : cell(agent.location.x, agent.location.y, AGENT_EXTENT));
+            if (!full)
+                {
+                if (agentRects[i] != null) regions.add(agentRects[i]);
+                if (rect != null) regions.add(rect);
+                }
+            agentRects[i] = rect;
+            }
+
+        if (!full) regions.add(scores);
+
+        dots = copy(dotField.dots, dots);
+        energizers = copy(dotField.energizers, energizers);
+        if (!full) merge(regions);
+        return !full;
+        }
+
+    long[] copy(long[] from, long[] to)
+        {
+        if (to == null || to.length != from.length) to = new long[from.length];
+        System.arraycopy(from, 0, to, 0, from.length);
+        return to;
+        }
+
+    /** Returns the pixels within extent cells of the center of the grid cell at (x, y). */
+    Rectangle cell(double x, double y, double extent)
+        {
+        int x0 = (int) Math.floor((x + 0.5 - extent) * cellWidth);
+        int y0 = (int) Math.floor((y + 0.5 - extent) * cellHeight);
+        int x1 = (int) Math.ceil((x + 0.5 + extent) * cellWidth);
+        int y1 = (int) Math.ceil((y + 0.5 + extent) * cellHeight);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+        }
+
+    /** Merges overlapping regions, so that no pixel is painted twice.  There are only a dozen or so regions. */
+    static void merge(java.util.List<Rectangle> regions)
+        {
+        boolean merged = true;
+        while(merged)
+            {
+            merged = false;
+            for(int i = 0; i < regions.size() && !merged; i++)
+                for(int j = i + 1; j < regions.size(); j++)
+                    if (regions.get(i).intersects(regions.get(j)))
+                        {
+                        regions.set(i, regions.get(i).union(regions.remove(j)));
+                        merged = true;
+                        break;
+                        }
+            }
+        }
+    }
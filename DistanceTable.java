@@ -0,0 +1,293 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import java.io.*;
+import java.util.concurrent.*;
+
+/** DistanceTable holds the true maze distance between every pair of open locations in a maze, and
+    the first move to make to get from one to the other along a shortest path.  Distances are counted
+    in grid steps, go through the tunnels, and never go through walls.
+
+    <p>The table is computed with one breadth-first search per open location.  The searches are
+    independent, so they run in parallel on the common fork-join pool.  Because a maze never changes,
+    the table is also cached on disk, one file per maze, in the directory cacheDirectory (by default
+    the directory "pacman" in java.io.tmpdir, or the sim.app.pacman.cache system property).  A cache
+    file which doesn't match its maze is ignored and rewritten.
+
+    <p>Open locations are numbered 0 ... n-1 in the order of their MazeGraph location.  The distances
+    are stored as a short[n * n] and the first moves as a byte[n * n], at from * n + to.  For the
+    classic mazes with some 300 open locations that is well under half a megabyte.  It grows with the square of
+    the maze, though, so there's no table for mazes with more than MAX_OPEN open locations (see fits(...)): that
+    would be 200 megabytes, and the distances would soon no longer fit in a short.
+*/
+
+public class DistanceTable implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    /** Returned by distance(...) if there is no path, or a location is a wall. */
+    public static final int UNREACHABLE = -1;
+
+    static final int MAGIC = 0x50414344;        // "PACD"
+    static final int VERSION = 1;
+
+    /** The most open locations a maze may have to get a table. */
+    public static final int MAX_OPEN = 8192;
+
+    /** Where distance tables are cached on disk.  If null, tables are always computed and never cached. */
+    public static File cacheDirectory = new File(System.getProperty("sim.app.pacman.cache",
+            new File(System.getProperty("java.io.tmpdir"), "pacman").getPath()));
+
+    int width;
+    int height;
+    /** A hash of the maze layout, so we can tell whether a cache file belongs to the maze. */
+    long mazeHash;
+    /** The number of open locations. */
+    int n;
+    /** For each MazeGraph location, its open location number, or UNREACHABLE if it's a wall. */
+    int[] index;
+    /** For each open location number, its MazeGraph location. */
+    int[] locations;
+    /** The distance from open location a to open location b, at a * n + b, or UNREACHABLE. */
+    short[] distances;
+    /** The first action to take from open location a to get to open location b, at a * n + b, or Agent.NOTHING. */
+    byte[] firstMoves;
+
+    DistanceTable(MazeGraph graph)
+        {
+        width = graph.getWidth();
+        height = graph.getHeight();
+        mazeHash = hash(graph);
+        index = new int[width * height];
+        int count = 0;
+        for(int loc = 0; loc < index.length; loc++)
+            index[loc] = graph.isOpen(loc % width, loc / width) ? count++ : UNREACHABLE;
+        n = count;
+        if (n > MAX_OPEN)
+            throw new RuntimeException("The maze " + graph.getName() + " has " + n + " open locations, but a DistanceTable can only be made for at most " + MAX_OPEN);
+        locations = new int[n];
+        for(int loc = 0; loc < index.length; loc++)
+            if (index[loc] != UNREACHABLE) locations[index[loc]] = loc;
+        }
+
+    /** Returns true if the given maze is small enough to have a table. */
+    public static boolean fits(MazeGraph graph)
+        {
+        return graph.getNumOpen() <= MAX_OPEN;
+        }
+
+    /** Returns the distance table for the given maze, from the disk cache if possible, else computing it
+        (and then caching it).  You'll normally want MazeGraph.getDistances() instead, which keeps the table around. */
+    public static DistanceTable load(MazeGraph graph)
+        {
+        DistanceTable table = new DistanceTable(graph);
+        File file = cacheFile(graph);
+        if (file != null && file.exists())
+            {
+            try
+                {
+                if (table.read(file)) return table;
+                }
+            catch (IOException e) { }   // broken cache file; we just compute it again
+            }
+        table.search(graph, ForkJoinPool.commonPool());
+        if (file != null)
+            {
+            try { table.write(file); }
+            catch (IOException e) { }   // caching is only an optimization
+            }
+        return table;
+        }
+
+    /** Computes the table for the given maze without touching the disk cache. */
+    public static DistanceTable compute(MazeGraph graph, ForkJoinPool pool)
+        {
+        DistanceTable table = new DistanceTable(graph);
+        table.search(graph, pool);
+        return table;
+        }
+
+    static File cacheFile(MazeGraph graph)
+        {
+        if (cacheDirectory == null) return null;
+        String name = graph.getName() == null ? "maze" : graph.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(cacheDirectory, name + "-" + Long.toHexString(hash(graph)) + ".dist");
+        }
+
+    /** A 64-bit FNV-1a hash of the maze's size and walls. */
+    static long hash(MazeGraph graph)
+        {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ graph.getWidth()) * 0x100000001b3L;
+        h = (h ^ graph.getHeight()) * 0x100000001b3L;
+        for(int y = 0; y < graph.getHeight(); y++)
+            for(int x = 0; x < graph.getWidth(); x++)
+                h = (h ^ (graph.isOpen(x, y) ? 0 : 1)) * 0x100000001b3L;
+        return h;
+        }
+
+    /** Fills in the whole table, running the searches on the given pool. */
+    void search(MazeGraph graph, ForkJoinPool pool)
+        {
+        distances = new short[n * n];
+        firstMoves = new byte[n * n];
+        pool.invoke(new Searches(graph, 0, n));
+        }
+
+    /** Runs the breadth-first searches from the open locations from ... to-1, splitting the range among the workers. */
+    class Searches extends RecursiveAction
+        {
+        private static final long serialVersionUID = 1;
+
+        static final int THRESHOLD = 16;
+        MazeGraph graph;
+        int from;
+        int to;
+
+        Searches(MazeGraph graph, int from, int to) { this.graph = graph; this.from = from; this.to = to; }
+
+        protected void compute()
+            {
+            if (to - from <= THRESHOLD)
+                {
+                int[] queue = new int[n];
+                for(int source = from; source < to; source++)
+                    search(graph, source, queue);
+                }
+            else
+                {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Searches(graph, from, mid), new Searches(graph, mid, to));
+                }
+            }
+        }
+
+    /** Breadth-first search from the given open location, filling in its row of the table.  The first move to a
+        location is inherited from the location it was reached from, so ties go to N, then E, then S, then W. */
+    void search(MazeGraph graph, int source, int[] queue)
+        {
+        int row = source * n;
+        for(int i = 0; i < n; i++)
+            {
+            distances[row + i] = UNREACHABLE;
+            firstMoves[row + i] = (byte) Agent.NOTHING;
+            }
+        distances[row + source] = 0;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        while(head < tail)
+            {
+            int current = queue[head++];
+            int loc = locations[current];
+            int moves = graph.getMoves(loc);
+            for(int action = Agent.N; action <= Agent.W; action++)
+                {
+                if ((moves & (1 << action)) == 0) continue;
+                int next = index[graph.getNeighbor(loc, action)];
+                if (distances[row + next] != UNREACHABLE) continue;
+                distances[row + next] = (short)(distances[row + current] + 1);
+                firstMoves[row + next] = (byte)(current == source ? action : firstMoves[row + current]);
+                queue[tail++] = next;
+                }
+            }
+        }
+
+    /** Returns the number of open locations in the maze. */
+    public int getNumOpen() { return n; }
+
+    /** Returns the open location number of the given MazeGraph location, or UNREACHABLE if it's a wall. */
+    public int getIndex(int location) { return index[location]; }
+
+    /** Returns the maze distance between two MazeGraph locations, or UNREACHABLE. */
+    public int distance(int fromLocation, int toLocation)
+        {
+        int a = index[fromLocation];
+        int b = index[toLocation];
+        if (a == UNREACHABLE || b == UNREACHABLE) return UNREACHABLE;
+        return distances[a * n + b];
+        }
+
+    /** Returns the maze distance from (x1, y1) to (x2, y2), or UNREACHABLE. */
+    public int distance(int x1, int y1, int x2, int y2)
+        {
+        return distance(x1 + y1 * width, x2 + y2 * width);
+        }
+
+    /** Returns the first action (N, E, S, or W) to take from one MazeGraph location to get to the other along a
+        shortest path, or Agent.NOTHING if they're the same location or there is no path. */
+    public int firstMove(int fromLocation, int toLocation)
+        {
+        int a = index[fromLocation];
+        int b = index[toLocation];
+        if (a == UNREACHABLE || b == UNREACHABLE) return Agent.NOTHING;
+        return firstMoves[a * n + b];
+        }
+
+    /** Returns the first action (N, E, S, or W) to take from (x1, y1) to get to (x2, y2) along a shortest path,
+        or Agent.NOTHING if they're the same location or there is no path. */
+    public int firstMove(int x1, int y1, int x2, int y2)
+        {
+        return firstMove(x1 + y1 * width, x2 + y2 * width);
+        }
+
+    /** Writes the table to the given file.  We write to a temporary file first and then rename it, so that
+        several runs sharing a cache directory never see a half-written table. */
+    void write(File file) throws IOException
+        {
+        File dir = file.getParentFile();
+        if (dir != null) dir.mkdirs();
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+        try
+            {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeLong(mazeHash);
+            out.writeInt(n);
+            for(int i = 0; i < distances.length; i++)
+                out.writeShort(distances[i]);
+            out.write(firstMoves);
+            }
+        finally
+            {
+            out.close();
+            }
+        if (!temp.renameTo(file))
+            {
+            temp.delete();
+            throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        }
+
+    /** Reads the table from the given file, returning false if the file belongs to a different maze. */
+    boolean read(File file) throws IOException
+        {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try
+            {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+                in.readInt() != width || in.readInt() != height ||
+                in.readLong() != mazeHash || in.readInt() != n)
+                return false;
+            short[] d = new short[n * n];
+            for(int i = 0; i < d.length; i++)
+                d[i] = in.readShort();
+            byte[] m = new byte[n * n];
+            in.readFully(m);
+            distances = d;
+            firstMoves = m;
+            return true;
+            }
+        finally
+            {
+            in.close();
+            }
+        }
+    }
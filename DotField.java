@@ -0,0 +1,130 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+
+/** DotField holds the Dots and Energizers of the maze.  Dots and energizers only ever sit right on
+    a grid location, so rather than storing objects in a Continuous2D we keep one bit per grid location:
+    one bitset for the dots and one for the energizers.  Testing for and eating a dot are then a single
+    array access, and the number of dots left is a popcount.
+
+    <p>A level always starts with the same dots, so PacMan builds one template DotField per maze and
+    copies it with setTo(...) on every reset rather than creating new objects.
+*/
+
+public class DotField implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    int width;
+    int height;
+
+    /** One bit per grid location, bit (y * width + x), set if there is a dot there. */
+    long[] dots;
+    /** One bit per grid location, bit (y * width + x), set if there is an energizer there. */
+    long[] energizers;
+
+    /** Creates an empty DotField of the given size. */
+    public DotField(int width, int height)
+        {
+        this.width = width;
+        this.height = height;
+        int words = (width * height + 63) >>> 6;
+        dots = new long[words];
+        energizers = new long[words];
+        }
+
+    /** Creates a DotField identical to the given one. */
+    public DotField(DotField other)
+        {
+        this(other.width, other.height);
+        setTo(other);
+        }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /** Makes this DotField identical to the given one.  If they are the same size no memory is allocated. */
+    public void setTo(DotField other)
+        {
+        if (other.dots.length != dots.length)
+            {
+            dots = new long[other.dots.length];
+            energizers = new long[other.energizers.length];
+            }
+        width = other.width;
+        height = other.height;
+        System.arraycopy(other.dots, 0, dots, 0, dots.length);
+        System.arraycopy(other.energizers, 0, energizers, 0, energizers.length);
+        }
+
+    /** Removes all dots and energizers. */
+    public void clear()
+        {
+        java.util.Arrays.fill(dots, 0L);
+        java.util.Arrays.fill(energizers, 0L);
+        }
+
+    boolean inBounds(int x, int y) { return x >= 0 && y >= 0 && x < width && y < height; }
+
+    static boolean get(long[] bits, int index) { return (bits[index >>> 6] & (1L << index)) != 0; }
+
+    /** Clears the bit and returns whether it was set. */
+    static boolean remove(long[] bits, int index)
+        {
+        long mask = 1L << index;
+        long word = bits[index >>> 6];
+        bits[index >>> 6] = word & ~mask;
+        return (word & mask) != 0;
+        }
+
+    /** Returns true if there is a dot at the given location.  Locations outside the maze have no dots. */
+    public boolean isDot(int x, int y) { return inBounds(x, y) && get(dots, y * width + x); }
+
+    /** Returns true if there is an energizer at the given location.  Locations outside the maze have no energizers. */
+    public boolean isEnergizer(int x, int y) { return inBounds(x, y) && get(energizers, y * width + x); }
+
+    /** Puts a dot at the given location. */
+    public void addDot(int x, int y) { int i = y * width + x; dots[i >>> 6] |= 1L << i; }
+
+    /** Puts an energizer at the given location. */
+    public void addEnergizer(int x, int y) { int i = y * width + x; energizers[i >>> 6] |= 1L << i; }
+
+    /** Removes the dot at the given location, returning true if there was one. */
+    public boolean eatDot(int x, int y) { return inBounds(x, y) && remove(dots, y * width + x); }
+
+    /** Removes the energizer at the given location, returning true if there was one. */
+    public boolean eatEnergizer(int x, int y) { return inBounds(x, y) && remove(energizers, y * width + x); }
+
+    /** Returns the number of dots left. */
+    public int numDots()
+        {
+        int count = 0;
+        for(int i = 0; i < dots.length; i++)
+            count += Long.bitCount(dots[i]);
+        return count;
+        }
+
+    /** Returns the number of energizers left. */
+    public int numEnergizers()
+        {
+        int count = 0;
+        for(int i = 0; i < energizers.length; i++)
+            count += Long.bitCount(energizers[i]);
+        return count;
+        }
+
+    /** Returns the number of dots plus energizers left. */
+    public int size() { return numDots() + numEnergizers(); }
+
+    /** Returns true if there are no dots and no energizers left. */
+    public boolean isEmpty()
+        {
+        for(int i = 0; i < dots.length; i++)
+            if ((dots[i] | energizers[i]) != 0) return false;
+        return true;
+        }
+    }
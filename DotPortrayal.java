@@ -0,0 +1,60 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import sim.portrayal.*;
+import java.awt.*;
+
+/** A FieldPortrayal2D which draws the dots and energizers of the model's DotField as white ovals,
+    dots small and energizers big.  Like Overlay it has no field of its own but asks the model for its
+    current DotField, so it keeps working when the game is reset.  Only grid locations within the
+    clip are looked at. */
+
+public class DotPortrayal extends FieldPortrayal2D
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The size of a dot relative to a grid cell. */
+    public static final double DOT_SCALE = 0.4;
+    /** The size of an energizer relative to a grid cell. */
+    public static final double ENERGIZER_SCALE = 1.0;
+
+    PacManWithUI ui;
+    Color color = Color.white;
+
+    public DotPortrayal(PacManWithUI ui) { this.ui = ui; }
+
+    public void draw(Object object, Graphics2D graphics, DrawInfo2D info)
+        {
+        DotField dots = ((PacMan)(ui.state)).dots;
+        if (dots == null) return;
+
+        double xScale = info.draw.width / dots.getWidth();
+        double yScale = info.draw.height / dots.getHeight();
+
+        // only bother with the grid locations which can show up in the clip
+        int minX = Math.max(0, (int) Math.floor((info.clip.x - info.draw.x) / xScale) - 1);
+        int minY = Math.max(0, (int) Math.floor((info.clip.y - info.draw.y) / yScale) - 1);
+        int maxX = Math.min(dots.getWidth() - 1, (int) Math.ceil((info.clip.x + info.clip.width - info.draw.x) / xScale) + 1);
+        int maxY = Math.min(dots.getHeight() - 1, (int) Math.ceil((info.clip.y + info.clip.height - info.draw.y) / yScale) + 1);
+
+        graphics.setColor(color);
+        int dw = (int)(xScale * DOT_SCALE);
+        int dh = (int)(yScale * DOT_SCALE);
+        int ew = (int)(xScale * ENERGIZER_SCALE);
+        int eh = (int)(yScale * ENERGIZER_SCALE);
+        for(int y = minY; y <= maxY; y++)
+            for(int x = minX; x <= maxX; x++)
+                {
+                double cx = info.draw.x + x * xScale;
+                double cy = info.draw.y + y * yScale;
+                if (dots.isDot(x, y))
+                    graphics.fillOval((int)(cx - xScale * DOT_SCALE / 2.0), (int)(cy - yScale * DOT_SCALE / 2.0), dw, dh);
+                if (dots.isEnergizer(x, y))
+                    graphics.fillOval((int)(cx - xScale * ENERGIZER_SCALE / 2.0), (int)(cy - yScale * ENERGIZER_SCALE / 2.0), ew, eh);
+                }
+        }
+    }
@@ -0,0 +1,248 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+
+/** An ExplorationMap is the Pac's memory of the maze: for each grid location whether he hasn't seen it yet
+    (UNEXPLORED), saw a wall there (WALL), or saw a path (PATH).  The Sensor marks it as the Pac looks around, and it
+    carries over from one life to the next.
+
+    <p>The states take 2 bits per location.  Alongside, the map keeps two bitsets of its unexplored locations and two
+    of its walls, one with the locations row by row (bit y * width + x, as in DotField) and one column by column (bit
+    x * height + y), updated as locations are marked.  The question the Pac asks of his memory, "going this way along
+    my row or column, do I come to an unexplored location before a wall?", is then a few bit operations per 64
+    locations rather than a walk along the row or column, however big the maze.
+
+    <p>Everything is in one long array, so copying or clearing a map is a single array operation.
+
+    <p>Running the class checks the bit operations against walking along the rows and columns, as the Pac used to,
+    on -maps random maps: the classic 28 by 35 and random sizes up to 150 on a side.  It prints the number of
+    differences and exits with 1 if there were any.
+
+    <pre>java sim.app.pacman.ExplorationMap [-maps 2000] [-seed 1]</pre>
+*/
+
+public class ExplorationMap implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    public static final int UNEXPLORED = 0;
+    public static final int WALL = 1;
+    public static final int PATH = 2;
+
+    int width;
+    int height;
+
+    /** The states, 2 bits at (x * height + y) * 2, then the unexplored locations and the walls row by row, starting at
+        rowUnexplored and rowWalls, then the same column by column, starting at colUnexplored and colWalls. */
+    long[] bits;
+    int rowUnexplored;
+    int rowWalls;
+    int colUnexplored;
+    int colWalls;
+
+    /** Creates a map of the given size with every location unexplored. */
+    public ExplorationMap(int width, int height)
+        {
+        this.width = width;
+        this.height = height;
+        int words = (width * height + 63) >>> 6;
+        rowUnexplored = (width * height * 2 + 63) >>> 6;
+        rowWalls = rowUnexplored + words;
+        colUnexplored = rowWalls + words;
+        colWalls = colUnexplored + words;
+        bits = new long[colWalls + words];
+        clear();
+        }
+
+    /** Creates a map identical to the given one. */
+    public ExplorationMap(ExplorationMap other)
+        {
+        this(other.width, other.height);
+        setTo(other);
+        }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /** Marks every location unexplored. */
+    public void clear()
+        {
+        java.util.Arrays.fill(bits, 0L);
+        int size = width * height;
+        int words = rowWalls - rowUnexplored;
+        java.util.Arrays.fill(bits, rowUnexplored, rowWalls, -1L);
+        java.util.Arrays.fill(bits, colUnexplored, colWalls, -1L);
+        if ((size & 63) != 0)
+            {
+            bits[rowUnexplored + words - 1] = (1L << size) - 1;
+            bits[colUnexplored + words - 1] = (1L << size) - 1;
+            }
+        }
+
+    /** Makes this map identical to the given one, which must be the same size. */
+    public void setTo(ExplorationMap other)
+        {
+        if (other == this) return;
+        if (other.width != width || other.height != height)
+            throw new RuntimeException("ExplorationMaps of different sizes");
+        System.arraycopy(other.bits, 0, bits, 0, bits.length);
+        }
+
+    /** Returns the state of the location (x, y). */
+    public int get(int x, int y)
+        {
+        int i = index(x, y);
+        return (int)(bits[i >>> 6] >>> (i & 63)) & 3;
+        }
+
+    /** Sets the state of the location (x, y). */
+    public void set(int x, int y, int state)
+        {
+        int i = index(x, y);
+        bits[i >>> 6] = (bits[i >>> 6] & ~(3L << (i & 63))) | ((long) state << (i & 63));
+
+        int row = y * width + x;
+        int col = x * height + y;
+        setBit(rowUnexplored, row, state == UNEXPLORED);
+        setBit(colUnexplored, col, state == UNEXPLORED);
+        setBit(rowWalls, row, state == WALL);
+        setBit(colWalls, col, state == WALL);
+        }
+
+    void setBit(int offset, int bit, boolean value)
+        {
+        if (value) bits[offset + (bit >>> 6)] |= 1L << bit;
+        else bits[offset + (bit >>> 6)] &= ~(1L << bit);
+        }
+
+    /** Returns word i of the unexplored locations row by row: bit (y * width + x) of the map, as in DotField, is
+        bit (y * width + x) % 64 of word (y * width + x) / 64. */
+    public long getUnexplored(int i) { return bits[rowUnexplored + i]; }
+
+    int index(int x, int y)
+        {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            throw new ArrayIndexOutOfBoundsException("(" + x + ", " + y + ") is outside the " + width + " by " + height + " map");
+        return (x * height + y) * 2;
+        }
+
+    /** Of the bits from up to to (both included) of the unexplored and wall bitsets starting at the given offsets,
+        returns true if the lowest one set in either is unexplored. */
+    boolean lowestIsUnexplored(int unexplored, int walls, int from, int to)
+        {
+        if (from > to) return false;
+        int word = from >>> 6;
+        int last = to >>> 6;
+        long mask = -1L << from;
+        while(true)
+            {
+            if (word == last) mask &= -1L >>> (63 - (to & 63));
+            long u = bits[unexplored + word] & mask;
+            long any = u | (bits[walls + word] & mask);
+            if (any != 0) return (u & Long.lowestOneBit(any)) != 0;
+            if (word == last) return false;
+            word++;
+            mask = -1L;
+            }
+        }
+
+    /** Of the bits from down to to (both included) of the unexplored and wall bitsets starting at the given offsets,
+        returns true if the highest one set in either is unexplored. */
+    boolean highestIsUnexplored(int unexplored, int walls, int from, int to)
+        {
+        if (from < to) return false;
+        int word = from >>> 6;
+        int last = to >>> 6;
+        long mask = -1L >>> (63 - (from & 63));
+        while(true)
+            {
+            if (word == last) mask &= -1L << to;
+            long u = bits[unexplored + word] & mask;
+            long any = u | (bits[walls + word] & mask);
+            if (any != 0) return (u & Long.highestOneBit(any)) != 0;
+            if (word == last) return false;
+            word--;
+            mask = -1L;
+            }
+        }
+
+    /** Returns true if, going north from (x, y) (not included), there's an unexplored location before any wall. */
+    public boolean isUnexploredNorth(int x, int y)
+        {
+        return highestIsUnexplored(colUnexplored, colWalls, x * height + y - 1, x * height);
+        }
+
+    /** Returns true if, going south from (x, y) (not included), there's an unexplored location before any wall. */
+    public boolean isUnexploredSouth(int x, int y)
+        {
+        return lowestIsUnexplored(colUnexplored, colWalls, x * height + y + 1, x * height + height - 1);
+        }
+
+    /** Returns true if, going west from (x, y) (not included), there's an unexplored location before any wall. */
+    public boolean isUnexploredWest(int x, int y)
+        {
+        return highestIsUnexplored(rowUnexplored, rowWalls, y * width + x - 1, y * width);
+        }
+
+    /** Returns true if, going east from (x, y) (not included), there's an unexplored location before any wall. */
+    public boolean isUnexploredEast(int x, int y)
+        {
+        return lowestIsUnexplored(rowUnexplored, rowWalls, y * width + x + 1, y * width + width - 1);
+        }
+
+    /** Returns true if, going from (x, y) (not included) by (dx, dy), there's an unexplored location before any
+        wall, by walking there. */
+    boolean walkIsUnexplored(int x, int y, int dx, int dy)
+        {
+        for(x += dx, y += dy; x >= 0 && y >= 0 && x < width && y < height; x += dx, y += dy)
+            {
+            int state = get(x, y);
+            if (state == UNEXPLORED) return true;
+            if (state == WALL) return false;
+            }
+        return false;
+        }
+
+    public static void main(String[] args)
+        {
+        int maps = (int) PacManBatch.argumentForKey("-maps", args, 2000);
+        ec.util.MersenneTwisterFast random = new ec.util.MersenneTwisterFast(PacManBatch.argumentForKey("-seed", args, 1));
+
+        long differences = 0;
+        long checks = 0;
+        for(int map = 0; map < maps; map++)
+            {
+            int width = (map % 2 == 0 ? 28 : 1 + random.nextInt(150));
+            int height = (map % 2 == 0 ? 35 : 1 + random.nextInt(150));
+            ExplorationMap explored = new ExplorationMap(width, height);
+            int[] states = new int[width * height];
+            double unexplored = random.nextDouble();
+            double wall = random.nextDouble();
+            // set every location a couple of times, so the bitsets are cleared as well as set
+            for(int pass = 0; pass < 2; pass++)
+                for(int x = 0; x < width; x++)
+                    for(int y = 0; y < height; y++)
+                        {
+                        int state = random.nextBoolean(unexplored) ? UNEXPLORED : random.nextBoolean(wall) ? WALL : PATH;
+                        explored.set(x, y, state);
+                        states[x * height + y] = state;
+                        }
+            for(int x = 0; x < width; x++)
+                for(int y = 0; y < height; y++)
+                    {
+                    if (explored.get(x, y) != states[x * height + y]) differences++;
+                    if (explored.isUnexploredNorth(x, y) != explored.walkIsUnexplored(x, y, 0, -1)) differences++;
+                    if (explored.isUnexploredEast(x, y) != explored.walkIsUnexplored(x, y, 1, 0)) differences++;
+                    if (explored.isUnexploredSouth(x, y) != explored.walkIsUnexplored(x, y, 0, 1)) differences++;
+                    if (explored.isUnexploredWest(x, y) != explored.walkIsUnexplored(x, y, -1, 0)) differences++;
+                    checks += 5;
+                    }
+            }
+        System.out.println("maps " + maps + " | checks " + checks + " | differences " + differences);
+        System.exit(differences == 0 ? 0 : 1);
+        }
+    }
@@ -0,0 +1,60 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import java.util.concurrent.atomic.*;
+
+/** A FrameExchanger hands the latest FrameSnapshot of a game from the thread running the game to whoever wants to
+    look at it, without either of them ever waiting on the other.  It holds a single snapshot, and only wants a new
+    one once that one has been taken by latest().  So the game runs as fast as it likes, copying itself out only
+    as often as a viewer drawing 60 times a second looks, rather than on every step.  The price is that the frame
+    a viewer gets is the one published just after it last looked: up to one of its frames old.
+
+    <p>Give one to PacMan.frames and the game publishes a snapshot after each step of its schedule when isWanted(),
+    and after its last step regardless.  See PacManViewer. */
+
+public class FrameExchanger
+    {
+    final AtomicReference<FrameSnapshot> slot = new AtomicReference<FrameSnapshot>();
+
+    /** How many snapshots were published, and how many of them were taken by latest(). */
+    final AtomicLong published = new AtomicLong();
+    final AtomicLong taken = new AtomicLong();
+    volatile FrameSnapshot lastTaken;
+    /** Whether latest() was called since the last publish(...). */
+    volatile boolean wanted = true;
+
+    /** Returns true if there's no snapshot yet or latest() was called since the last one was published, so a new
+        one is worth making.  Never blocks. */
+    public boolean isWanted() { return wanted; }
+
+    /** Replaces the snapshot with the given one.  Never blocks. */
+    public void publish(FrameSnapshot frame)
+        {
+        // cleared before the snapshot goes in, so a latest() in between asks again rather than being lost
+        wanted = false;
+        slot.set(frame);
+        published.incrementAndGet();
+        }
+
+    /** Returns the latest snapshot published, or null if there hasn't been one yet.  Never blocks.  It may be the
+        same as last time, if the game hasn't stepped since. */
+    public FrameSnapshot latest()
+        {
+        FrameSnapshot frame = slot.get();
+        wanted = true;
+        if (frame != null && frame != lastTaken)
+            {
+            lastTaken = frame;
+            taken.incrementAndGet();
+            }
+        return frame;
+        }
+
+    public long getPublished() { return published.get(); }
+    /** Returns how many different snapshots latest() returned. */
+    public long getTaken() { return taken.get(); }
+    }
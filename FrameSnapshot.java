@@ -0,0 +1,111 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+
+/** A FrameSnapshot is what the game looks like after a step: the scores, the dots, and where the Pacs and ghosts are
+    and which way they face.  It's everything needed to draw the game, copied out of the model, and it never changes
+    afterwards.  So another thread can draw from it at its leisure while the model goes on.  See FrameExchanger.
+
+    <p>Unlike a Snapshot it can't put the game back: it only has what's seen on the screen. */
+
+public final class FrameSnapshot
+    {
+    /** The schedule's steps and time when the snapshot was taken. */
+    public final long steps;
+    public final double time;
+
+    public final int level;
+    public final int score;
+    public final int deaths;
+
+    /** The maze.  MazeGraphs never change, so it's shared rather than copied. */
+    public final MazeGraph graph;
+
+    final long[] dots;
+    final long[] energizers;
+
+    final double[] pacX;
+    final double[] pacY;
+    final int[] pacAction;
+
+    final double[] ghostX;
+    final double[] ghostY;
+    final int[] ghostFace;
+    final String[] ghostName;
+
+    /** Takes a snapshot of the game as it is now.  Call this between steps. */
+    public FrameSnapshot(PacMan pacman)
+        {
+        steps = pacman.schedule.getSteps();
+        time = pacman.schedule.getTime();
+        level = pacman.level;
+        score = pacman.score;
+        deaths = pacman.deaths;
+        graph = pacman.graph;
+        dots = pacman.dots.dots.clone();
+        energizers = pacman.dots.energizers.clone();
+
+        int numPacs = pacman.pacs.length;
+        pacX = new double[numPacs];
+        pacY = new double[numPacs];
+        pacAction = new int[numPacs];
+        for(int i = 0; i < numPacs; i++)
+            {
+            Pac pac = pacman.pacs[i];
+            if (pac == null) { pacX[i] = Double.NaN; pacY[i] = Double.NaN; continue; }
+            pacX[i] = pac.location.x;
+            pacY[i] = pac.location.y;
+            pacAction[i] = pac.lastAction;
+            }
+
+        int numGhosts = pacman.ghosts.length;
+        ghostX = new double[numGhosts];
+        ghostY = new double[numGhosts];
+        ghostFace = new int[numGhosts];
+        ghostName = new String[numGhosts];
+        for(int i = 0; i < numGhosts; i++)
+            {
+            Ghost ghost = pacman.ghosts[i];
+            ghostX[i] = ghost.location.x;
+            ghostY[i] = ghost.location.y;
+            ghostFace[i] = (int) ghost.doubleValue();
+            ghostName[i] = ghost.getClass().getSimpleName();
+            }
+        }
+
+    public int getWidth() { return graph.getWidth(); }
+    public int getHeight() { return graph.getHeight(); }
+
+    public boolean isDot(int x, int y)
+        {
+        int i = x + y * graph.getWidth();
+        return (dots[i >>> 6] & (1L << i)) != 0;
+        }
+
+    public boolean isEnergizer(int x, int y)
+        {
+        int i = x + y * graph.getWidth();
+        return (energizers[i >>> 6] & (1L << i)) != 0;
+        }
+
+    public int getNumPacs() { return pacX.length; }
+    /** Returns false if the Pac is gone (he died in a two-Pac game). */
+    public boolean isPacThere(int pac) { return !Double.isNaN(pacX[pac]); }
+    public double getPacX(int pac) { return pacX[pac]; }
+    public double getPacY(int pac) { return pacY[pac]; }
+    /** Returns the way the Pac last went, N, E, S, W, or NOTHING as in Agent. */
+    public int getPacAction(int pac) { return pacAction[pac]; }
+
+    public int getNumGhosts() { return ghostX.length; }
+    public double getGhostX(int ghost) { return ghostX[ghost]; }
+    public double getGhostY(int ghost) { return ghostY[ghost]; }
+    /** Returns the face the ghost shows: 0 to 3 for looking N, W, S, E, 4 and 5 for frightened (blinking).  See
+        Ghost.doubleValue(). */
+    public int getGhostFace(int ghost) { return ghostFace[ghost]; }
+    /** Returns the name of the ghost's class: Blinky, Pinky, Inky, or Clyde. */
+    public String getGhostName(int ghost) { return ghostName[ghost]; }
+    }
@@ -0,0 +1,355 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+
+/** A FrontierPlanner knows, for every open location of a maze, how far it is to the nearest goal, and so which way
+    to go to get there.  The goals are the locations with a dot or an energizer on them, and the open locations the
+    Pac hasn't explored yet.  The Pac asks it where to go when there's nothing to eat right around him, rather than
+    wandering about in parts of the maze he's already cleared.
+
+    <p>The distances come from a breadth-first search out of all the goals at once.  During a level goals only ever
+    go away, as dots are eaten and the maze is explored, and then the distances only grow, and only near the goals
+    that went away.  So rather than searching again the planner repairs what changed.  First it finds the
+    locations whose nearest goal was one of those which went away and which have no other way to a goal as short,
+    going out from the goals level by level.  Then it works out the distances of just those locations again from
+    their neighbors which kept theirs.  If goals were added instead (a new level, or a game put back to a Snapshot)
+    it searches again from scratch.
+
+    <p>The planner finds out what changed itself, by comparing the goals with those it saw last time, a few dozen
+    words of bits, so it needn't be told when a dot is eaten.
+
+    <p>Running the class checks the repairs against searches from scratch.  On each maze it scatters dots,
+    energizers, and explored locations at random -maps times, then takes the goals away a few at a time, and after
+    every update compares the distances with those of a new planner.  The mazes are the shipped ones and, with
+    -maze, a generated one of that size.  It prints the number of differences and exits with 1 if there were any.
+
+    <pre>java sim.app.pacman.FrontierPlanner [-maps 200] [-seed 1] [-maze 60x60]</pre>
+*/
+
+public class FrontierPlanner implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The distance of a location from which no goal can be reached. */
+    public static final int FAR = Integer.MAX_VALUE / 2;
+
+    final MazeGraph graph;
+    final int width;
+    final int height;
+    final int size;
+
+    /** The distance from each location to the nearest goal. */
+    int[] distances;
+    /** The goals the distances are for, bit (y * width + x) as in DotField. */
+    long[] goals;
+    /** The goals as they are now, while updating. */
+    long[] current;
+    /** The open locations, bit (y * width + x) as in DotField. */
+    long[] open;
+
+    int[] queue;
+    /** The locations whose distance is being worked out again are those with invalid[location] == stamp. */
+    int[] invalid;
+    int stamp;
+    boolean[] queued;
+
+    /** How many times the distances were computed from scratch, and how many times they were repaired. */
+    public long rebuilds;
+    public long repairs;
+
+    public FrontierPlanner(MazeGraph graph)
+        {
+        this.graph = graph;
+        width = graph.getWidth();
+        height = graph.getHeight();
+        size = width * height;
+        distances = new int[size];
+        int words = (size + 63) >>> 6;
+        goals = new long[words];
+        current = new long[words];
+        queue = new int[size];
+        invalid = new int[size];
+        queued = new boolean[size];
+        open = new long[words];
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++)
+                if (graph.isOpen(x, y)) open[(y * width + x) >>> 6] |= 1L << (y * width + x);
+        java.util.Arrays.fill(distances, FAR);
+        }
+
+    public MazeGraph getGraph() { return graph; }
+
+    /** Returns the distance from (x, y) to the nearest goal as of the last update(...), or FAR. */
+    public int getDistance(int x, int y)
+        {
+        return distances[x + y * width];
+        }
+
+    /** Returns which way to go from (x, y) to get closer to the nearest goal: N, E, S, or W, or Agent.NOTHING if no
+        goal can be reached.  Updates the distances first. */
+    public int nextMove(int x, int y, DotField dots, ExplorationMap explored)
+        {
+        update(dots, explored);
+        int location = x + y * width;
+        int moves = graph.getMoves(location);
+        int best = Agent.NOTHING;
+        int bestDistance = FAR;
+        for(int action = Agent.N; action <= Agent.W; action++)
+            if ((moves & (1 << action)) != 0)
+                {
+                int d = distances[graph.getNeighbor(location, action)];
+                if (d < bestDistance) { best = action; bestDistance = d; }
+                }
+        return best;
+        }
+
+    /** Brings the distances up to date with the dots and the explored locations. */
+    public void update(DotField dots, ExplorationMap explored)
+        {
+        long[] current = this.current;
+        long[] goals = this.goals;
+        for(int i = 0; i < current.length; i++)
+            current[i] = dots.dots[i] | dots.energizers[i] | (explored.getUnexplored(i) & open[i]);
+
+        boolean added = false;
+        boolean removed = false;
+        for(int i = 0; i < current.length; i++)
+            {
+            if ((current[i] & ~goals[i]) != 0) added = true;
+            if ((goals[i] & ~current[i]) != 0) removed = true;
+            }
+        if (added) rebuild();
+        else if (removed) repair();
+        System.arraycopy(current, 0, goals, 0, current.length);
+        }
+
+    boolean isGoal(int location)
+        {
+        return (current[location >>> 6] & (1L << location)) != 0;
+        }
+
+    /** Computes the distances from scratch, for the current goals. */
+    void rebuild()
+        {
+        rebuilds++;
+        java.util.Arrays.fill(distances, FAR);
+        int tail = 0;
+        for(int location = 0; location < size; location++)
+            if (isGoal(location))
+                {
+                distances[location] = 0;
+                queue[tail++] = location;
+                }
+        for(int head = 0; head < tail; head++)
+            {
+            int location = queue[head];
+            int d = distances[location] + 1;
+            int moves = graph.getMoves(location);
+            for(int action = Agent.N; action <= Agent.W; action++)
+                if ((moves & (1 << action)) != 0)
+                    {
+                    int neighbor = graph.getNeighbor(location, action);
+                    if (distances[neighbor] > d)
+                        {
+                        distances[neighbor] = d;
+                        queue[tail++] = neighbor;
+                        }
+                    }
+            }
+        }
+
+    /** Repairs the distances after the goals in goals but not in current went away. */
+    void repair()
+        {
+        repairs++;
+        if (++stamp == 0) { java.util.Arrays.fill(invalid, 0); stamp = 1; }
+
+        // the goals which went away are invalid
+        int tail = 0;
+        for(int i = 0; i < goals.length; i++)
+            {
+            long gone = goals[i] & ~current[i];
+            while(gone != 0)
+                {
+                int location = (i << 6) + Long.numberOfTrailingZeros(gone);
+                gone &= gone - 1;
+                invalid[location] = stamp;
+                queue[tail++] = location;
+                }
+            }
+
+        // going out from them level by level, a location one further is invalid too if none of its neighbors
+        // at our level is still valid.  The queue goes level by level, so by the time we look at a location
+        // we know about all the invalid ones of the level below.
+        for(int head = 0; head < tail; head++)
+            {
+            int location = queue[head];
+            int d = distances[location];
+            int moves = graph.getMoves(location);
+            for(int action = Agent.N; action <= Agent.W; action++)
+                if ((moves & (1 << action)) != 0)
+                    {
+                    int neighbor = graph.getNeighbor(location, action);
+                    if (invalid[neighbor] == stamp || distances[neighbor] != d + 1 || !isOrphaned(neighbor, d)) continue;
+                    invalid[neighbor] = stamp;
+                    queue[tail++] = neighbor;
+                    }
+            }
+
+        // work out the invalid locations again from their valid neighbors, then from each other
+        int count = tail;
+        tail = 0;
+        for(int i = 0; i < count; i++)
+            {
+            int location = queue[i];
+            int best = FAR;
+            int moves = graph.getMoves(location);
+            for(int action = Agent.N; action <= Agent.W; action++)
+                if ((moves & (1 << action)) != 0)
+                    {
+                    int neighbor = graph.getNeighbor(location, action);
+                    if (invalid[neighbor] != stamp && distances[neighbor] + 1 < best) best = distances[neighbor] + 1;
+                    }
+            distances[location] = best;
+            }
+        // those which could be reached go into a ring, from which their neighbors follow them
+        for(int i = 0; i < count; i++)
+            {
+            int location = queue[i];
+            if (distances[location] < FAR)
+                {
+                queued[location] = true;
+                queue[tail++] = location;
+                }
+            }
+        int head = 0;
+        int length = tail;
+        tail %= size;
+        while(length > 0)
+            {
+            int location = queue[head];
+            head = (head + 1) % size;
+            length--;
+            queued[location] = false;
+            int d = distances[location] + 1;
+            int moves = graph.getMoves(location);
+            for(int action = Agent.N; action <= Agent.W; action++)
+                if ((moves & (1 << action)) != 0)
+                    {
+                    int neighbor = graph.getNeighbor(location, action);
+                    if (invalid[neighbor] == stamp && distances[neighbor] > d)
+                        {
+                        distances[neighbor] = d;
+                        if (!queued[neighbor])
+                            {
+                            queued[neighbor] = true;
+                            queue[tail] = neighbor;
+                            tail = (tail + 1) % size;
+                            length++;
+                            }
+                        }
+                    }
+            }
+        }
+
+    /** Returns true if the location, at distance d + 1, has no neighbor at distance d which is still valid. */
+    boolean isOrphaned(int location, int d)
+        {
+        int moves = graph.getMoves(location);
+        for(int action = Agent.N; action <= Agent.W; action++)
+            if ((moves & (1 << action)) != 0)
+                {
+                int neighbor = graph.getNeighbor(location, action);
+                if (distances[neighbor] == d && invalid[neighbor] != stamp) return false;
+                }
+        return true;
+        }
+
+    /** Checks the repairs of planners on the given maze against searches from scratch, as in main(...), and returns
+        the number of locations whose distances differed, adding up the updates into updates[0]. */
+    static long check(MazeGraph graph, int maps, ec.util.MersenneTwisterFast random, long[] updates)
+        {
+        int width = graph.getWidth();
+        int height = graph.getHeight();
+        long differences = 0;
+        int[] goals = new int[width * height];
+        for(int map = 0; map < maps; map++)
+            {
+            DotField dots = new DotField(width, height);
+            ExplorationMap explored = new ExplorationMap(width, height);
+            int numGoals = 0;
+            for(int y = 0; y < height; y++)
+                for(int x = 0; x < width; x++)
+                    {
+                    if (random.nextBoolean(0.5)) explored.set(x, y, graph.isOpen(x, y) ? ExplorationMap.PATH : ExplorationMap.WALL);
+                    if (!graph.isOpen(x, y)) continue;
+                    if (random.nextBoolean(0.3)) dots.addDot(x, y);
+                    else if (random.nextBoolean(0.05)) dots.addEnergizer(x, y);
+                    if (dots.isDot(x, y) || dots.isEnergizer(x, y) || explored.get(x, y) == ExplorationMap.UNEXPLORED)
+                        goals[numGoals++] = y * width + x;
+                    }
+            for(int i = numGoals - 1; i > 0; i--)
+                {
+                int j = random.nextInt(i + 1);
+                int g = goals[i]; goals[i] = goals[j]; goals[j] = g;
+                }
+
+            FrontierPlanner planner = new FrontierPlanner(graph);
+            planner.update(dots, explored);
+            for(int next = 0; next < numGoals; )
+                {
+                // take away a few goals, as eating and looking around do
+                for(int n = 1 + random.nextInt(4); n > 0 && next < numGoals; n--, next++)
+                    {
+                    int x = goals[next] % width;
+                    int y = goals[next] / width;
+                    dots.eatDot(x, y);
+                    dots.eatEnergizer(x, y);
+                    explored.set(x, y, ExplorationMap.PATH);
+                    }
+                planner.update(dots, explored);
+                FrontierPlanner fresh = new FrontierPlanner(graph);
+                fresh.update(dots, explored);
+                for(int i = 0; i < planner.size; i++)
+                    if (planner.distances[i] != fresh.distances[i]) differences++;
+                updates[0]++;
+                }
+            if (planner.rebuilds != 1)
+                throw new RuntimeException("Taking goals away made the planner search again from scratch");
+            }
+        return differences;
+        }
+
+    public static void main(String[] args)
+        {
+        int maps = (int) PacManBatch.argumentForKey("-maps", args, 200);
+        ec.util.MersenneTwisterFast random = new ec.util.MersenneTwisterFast(PacManBatch.argumentForKey("-seed", args, 1));
+
+        java.util.ArrayList<MazeGraph> graphs = new java.util.ArrayList<MazeGraph>();
+        for(int i = 0; i < 2; i++)
+            graphs.add(PacMan.getMazeGraph(PacMan.getMazeFile(i)));
+        String maze = PacManBatch.argumentForKey("-maze", args);
+        if (maze != null)
+            {
+            String[] size = maze.toLowerCase().split("x");
+            graphs.add(PacMan.getGeneratedMazeGraph(Integer.parseInt(size[0]), Integer.parseInt(size[size.length - 1]),
+                    random.nextLong()));
+            }
+
+        long differences = 0;
+        long[] updates = new long[1];
+        for(int i = 0; i < graphs.size(); i++)
+            {
+            MazeGraph graph = graphs.get(i);
+            long d = check(graph, maps, random, updates);
+            System.out.println(graph.getWidth() + "x" + graph.getHeight() + " | maps " + maps + " | differences " + d);
+            differences += d;
+            }
+        System.out.println("updates " + updates[0] + " | differences " + differences);
+        System.exit(differences == 0 ? 0 : 1);
+        }
+    }
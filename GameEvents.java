@@ -0,0 +1,108 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import jdk.jfr.*;
+
+/** GameEvents holds the JDK Flight Recorder events the game emits, for looking at long runs in Java Mission Control
+    without changing any code.  They're all disabled by default, and then cost next to nothing: the JIT throws the
+    event objects away.  Turn them on in a JFR settings file, or all of them with for instance
+
+    <pre>java -XX:StartFlightRecording:filename=pacman.jfr,settings=pacman.jfc sim.app.pacman.PacManBatch ...</pre>
+
+    where pacman.jfc is a copy of default.jfc with the sim.app.pacman events enabled.  AgentStep and PolicyDecision
+    are timed (begin() ... commit()); the others are instants.
+
+    <p>Games played inside an MCTSSearch emit events too, since they're PacMans like any other.  Every event says
+    whether it came from one of those (rollout), so filter on it to see only what really happened. */
+
+public class GameEvents
+    {
+    @Name("sim.app.pacman.AgentStep")
+    @Label("Agent Step")
+    @Description("One step of a Pac or a ghost")
+    @Category({ "PacMan", "Simulation" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class AgentStep extends Event
+        {
+        @Label("Agent") public String agent;
+        @Label("Tag") @Description("The Pac's tag, or the ghost's occupancy slot") public int tag;
+        @Label("Rollout") @Description("Whether the game is a search's lookahead") public boolean rollout;
+        }
+
+    @Name("sim.app.pacman.PolicyDecision")
+    @Label("Policy Decision")
+    @Description("A Pac deciding where to go")
+    @Category({ "PacMan", "Policy" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class PolicyDecision extends Event
+        {
+        @Label("Policy") public String policy;
+        @Label("Tag") public int tag;
+        @Label("Action") @Description("N = 0, E = 1, S = 2, W = 3, NOTHING = -1") public int action;
+        @Label("Rollout") @Description("Whether the game is a search's lookahead") public boolean rollout;
+        }
+
+    @Name("sim.app.pacman.DotEaten")
+    @Label("Dot Eaten")
+    @Category({ "PacMan", "Game" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class DotEaten extends Event
+        {
+        @Label("Tag") public int tag;
+        @Label("X") public int x;
+        @Label("Y") public int y;
+        @Label("Energizer") public boolean energizer;
+        @Label("Score") public int score;
+        @Label("Rollout") @Description("Whether the game is a search's lookahead") public boolean rollout;
+        }
+
+    @Name("sim.app.pacman.GhostEaten")
+    @Label("Ghost Eaten")
+    @Category({ "PacMan", "Game" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class GhostEaten extends Event
+        {
+        @Label("Tag") public int tag;
+        @Label("Ghost") public String ghost;
+        @Label("Points") public int points;
+        @Label("Score") public int score;
+        @Label("Rollout") @Description("Whether the game is a search's lookahead") public boolean rollout;
+        }
+
+    @Name("sim.app.pacman.PacDeath")
+    @Label("Pac Death")
+    @Category({ "PacMan", "Game" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class PacDeath extends Event
+        {
+        @Label("Tag") public int tag;
+        @Label("Deaths") public int deaths;
+        @Label("Level") public int level;
+        @Label("Score") public int score;
+        @Label("Steps") public int steps;
+        @Label("Rollout") @Description("Whether the game is a search's lookahead") public boolean rollout;
+        }
+
+    @Name("sim.app.pacman.LevelWon")
+    @Label("Level Won")
+    @Category({ "PacMan", "Game" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class LevelWon extends Event
+        {
+        @Label("Level") public int level;
+        @Label("Levels Won") public int levelsWon;
+        @Label("Score") public int score;
+        @Label("Steps") public int steps;
+        @Label("Rollout") @Description("Whether the game is a search's lookahead") public boolean rollout;
+        }
+    }
@@ -55,7 +55,7 @@ public abstract class Ghost extends Agent implements Steppable, Valuable
     public static final int INITIAL_WAITING_PERIOD = WAITING_PERIOD / 4;
         
     /** The location of the jail's exit.  This is a special location that the agents can go out of but not into. */
-    public Double2D exitLocation = new Double2D(13.5, 16);
+    public Double2D exitLocation;
         
     /** Ghost fright countdown timer.  If <= 0, the ghost is not frightened.  */
     public int frightened = 0;
@@ -94,18 +94,35 @@ public abstract class Ghost extends Agent implements Steppable, Valuable
     /** Moves the ghost to the jail and sets him waiting.  Resets his frightened counter.  */
     public void putInJail()
         {
-        location = new MutableDouble2D(exitLocation);
-        pacman.agents.setObjectLocation(this, exitLocation);
+        setLocation((int) Math.round(exitLocation.x * UNITS), (int) Math.round(exitLocation.y * UNITS));
         lastAction = W;
         frightened = 0;
         waiting = WAITING_PERIOD;
         }
         
 
+    void saveState(int[] state, int offset)
+        {
+        super.saveState(state, offset);
+        state[offset + 4] = frightened;
+        state[offset + 5] = waiting;
+        state[offset + 6] = exiting ? 1 : 0;
+        }
+
+    void restoreState(int[] state, int offset)
+        {
+        super.restoreState(state, offset);
+        frightened = state[offset + 4];
+        waiting = state[offset + 5];
+        exiting = state[offset + 6] != 0;
+        }
+
+
     /** Creates a ghost, facing west, and schedules him on the schedule.  */
     public Ghost(PacMan pacman) 
         {
         super(pacman);
+        exitLocation = pacman.graph.getHouseExit();
         lastAction = W;
         pacman.schedule.scheduleRepeating(this, 1, 1);
         }
@@ -130,6 +147,57 @@ public abstract class Ghost extends Agent implements Steppable, Valuable
         
         
     static final int MIN_DIST_FOR_TOROIDAL = 4;
+
+    /** Picks the action, out of the given bitmask of choices, to do from the grid location (x, y): the one whose
+        next grid location is closest to the target, or a random one if I'm frightened.  Returns NOTHING if there
+        are no choices.  The notion of "closest to target" is computed nontoroidally, but with some slop -- see step(). */
+    int chooseAction(int x, int y, int choices, Double2D target)
+        {
+        int bestAction = NOTHING;
+        double bestActionDistanceSquared = Double.POSITIVE_INFINITY;  // bad
+        Continuous2D agents = pacman.agents;
+                                
+        // the NEXT grid cell from performing a given action
+        double nx = 0;
+        double ny = 0;
+                                
+        int tick = 1;
+                                
+        // compute the possible actions I can do
+        for(int action = N; action <= W; action++)
+            if ((choices & (1 << action)) != 0)
+                {
+                switch(action)
+                    {
+                    case N: nx = x; ny = y - 1; break;
+                    case E: nx = x + 1; ny = y; break;
+                    case S: nx = x; ny = y + 1; break;
+                    case W: nx = x - 1; ny = y; break;
+                    default:
+                        throw new RuntimeException("default case should never occur");
+                    }
+                                                
+                // Here's how I'm going to define it.  
+                // The Ghosts only use toroidal information to compute distance to the pac
+                // if they're quite close to him in X or Y toroidally; else they use normal distance.
+                // also never use toroidal distance if scattering.
+                                                
+                double dx = 0;
+                double dy = 0;
+                if (frightened <= 0 && 
+                    Math.abs(agents.stx(target.x - nx)) <= MIN_DIST_FOR_TOROIDAL ||
+                    Math.abs(agents.sty(target.y - ny)) <-MIN_DIST_FOR_TOROIDAL)
+                    { dx = agents.tdx(target.x, nx); dy = agents.tdy(target.y, ny); }
+                else { dx = target.x - nx; dy = target.y - ny; }
+                double dist = dx * dx + dy * dy;
+                                                
+                if ((frightened <= 0 && (bestAction == NOTHING || (dist < bestActionDistanceSquared))) ||  // pick the best when I'm not afraid
+                    (frightened > 0 && pacman.random.nextBoolean(1.0 / (tick++))))          // pick a random value when I'm afraid
+                    { bestAction = action; bestActionDistanceSquared = dist; }
+                }
+        return bestAction;
+        }
+
         
     /** Steps the ghost.  First, if the ghost has just been frightened, he reverses direction and starts to go slower.
         Second, if the ghost is in the process of leaving the box, he moves specially, heading north until he's out of
@@ -138,10 +206,14 @@ public abstract class Ghost extends Agent implements Steppable, Valuable
         unless it's the only option), then picks the one closest to his target (or randomly if he's frightened).
         The notion of "closest to target" is computed nontoroidally, but with some slop -- if the target is
         within 4 away toroidally, the distance is toroidal, so ghosts near the tunnel may go in the tunnel to chase
-        the Pac.  We then perform the action and decrease our frightened and waiting counts by 1. */
+        the Pac.  When I'm not frightened the choice is usually looked up in the maze's DecisionTable rather than
+        computed.  We then perform the action and decrease our frightened and waiting counts by 1. */
                  
     public void step(SimState state)
         {
+        GameEvents.AgentStep event = new GameEvents.AgentStep();
+        event.begin();
+
         // first things first: if the Pac has just eaten an energizer, and
         // then the reducer has reduced the pill time by one, we should reverse
         // our direction because we are now scared.
@@ -174,54 +246,31 @@ public abstract class Ghost extends Agent implements Steppable, Valuable
 
             if (location.x == (int) location.x && location.y == (int) location.y)
                 {
-                double x = location.x;
-                double y = location.y;
-                                
-                int bestAction = NOTHING;
-                double bestActionDistanceSquared = Double.POSITIVE_INFINITY;  // bad
-                                
-                Double2D target = getTarget();
-
+                int x = (int) location.x;
+                int y = (int) location.y;
                 int reverseAction = reverseOf(lastAction);
-                Continuous2D agents = pacman.agents;
-                                
-                // the NEXT grid cell from performing a given action
-                double nx = 0;
-                double ny = 0;
-                                
-                int tick = 1;
-                                
-                // compute the possible actions I can do
-                for(int action = N; action <= W; action++)
-                    if (action != reverseAction && isPossibleToDoAction(action))
-                        {
-                        switch(action)
-                            {
-                            case N: nx = x; ny = y - 1; break;
-                            case E: nx = x + 1; ny = y; break;
-                            case S: nx = x; ny = y + 1; break;
-                            case W: nx = x - 1; ny = y; break;
-                            default:
-                                throw new RuntimeException("default case should never occur");
-                            }
-                                                
-                        // Here's how I'm going to define it.  
-                        // The Ghosts only use toroidal information to compute distance to the pac
-                        // if they're quite close to him in X or Y toroidally; else they use normal distance.
-                        // also never use toroidal distance if scattering.
-                                                
-                        double dist = 0;
-                        if (frightened <= 0 && 
-                            Math.abs(agents.stx(target.x - nx)) <= MIN_DIST_FOR_TOROIDAL ||
-                            Math.abs(agents.sty(target.y - ny)) <-MIN_DIST_FOR_TOROIDAL)
-                            dist = agents.tds(target, new Double2D(nx, ny));
-                        else dist = target.distanceSq(new Double2D(nx, ny));
-                                                
-                        if ((frightened <= 0 && (bestAction == NOTHING || (dist < bestActionDistanceSquared))) ||  // pick the best when I'm not afraid
-                            (frightened > 0 && pacman.random.nextBoolean(1.0 / (tick++))))          // pick a random value when I'm afraid
-                            { bestAction = action; bestActionDistanceSquared = dist; }
-                        }
-                                                
+
+                // the directions I can go from here other than back, straight out of the compiled maze
+                int choices = pacman.graph.getMoves(x, y) & ~(1 << reverseAction);
+                int bestAction;
+
+                if (frightened <= 0 && Integer.bitCount(choices) <= 1)
+                    {
+                    // no choice to make.  With two Pacs getTarget() uses the random number
+                    // generator, so we still call it to keep the game the same.
+                    if (pacman.pacs.length == 2) getTarget();
+                    bestAction = (choices == 0 ? reverseAction : Integer.numberOfTrailingZeros(choices));
+                    }
+                else
+                    {
+                    Double2D target = getTarget();
+                    bestAction = NOTHING;
+                    if (frightened <= 0)
+                        bestAction = pacman.graph.getDecisions().getAction(x, y, lastAction, target.x, target.y);
+                    if (bestAction == NOTHING)
+                        bestAction = chooseAction(x, y, choices, target);
+                    }
+
                 // maybe there's no choice but to reverse
                 if (bestAction == NOTHING)
                     bestAction = reverseAction;  // always possible to do
@@ -235,5 +284,13 @@ public abstract class Ghost extends Agent implements Steppable, Valuable
             if (--frightened < 0) frightened = 0;
             if (--waiting < 0) waiting = 0;
             }
+
+        if (event.shouldCommit())
+            {
+            event.agent = getClass().getSimpleName();
+            event.tag = slot;
+            event.rollout = pacman.isLookahead();
+            event.commit();
+            }
         }
     }
@@ -22,7 +22,7 @@ public class Inky extends Pinky
 
     Blinky blinky;
         
-    public Double2D getStartLocation() { return new Double2D(13.5, 16); }
+    public Double2D getStartLocation() { return pacman.graph.getHouseExit(); }
 
     public Inky(PacMan pacman, Blinky blinky) 
         {
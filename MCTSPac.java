@@ -0,0 +1,89 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import sim.engine.*;
+
+/** An MCTSPac decides where to go by Monte Carlo Tree Search.  Between grid locations, and in corridors, he
+    just keeps going.  But at every junction, and whenever the Sensor sees a ghost nearby, he asks his MCTSSearch,
+    which plays the game forward from the present state a great many times with the real ghosts and picks the
+    choice which worked out best.  If the game can't be searched right now he falls back on the regular Pac's
+    policy.  MCTSPacMan is a PacMan whose Pacs are MCTSPacs. */
+
+public class MCTSPac extends Pac
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The search, which is shared by all the Pacs of the game, one life after the other. */
+    public MCTSSearch search;
+
+    public MCTSPac(PacMan pacman, int tag, ExplorationMap env, MCTSSearch search)
+        {
+        super(pacman, tag, env);
+        this.search = search;
+        search.prepare(pacman);         // so the first decision doesn't have to set things up
+        }
+
+    /** Returns the actions the Pac can presently do, as a bitmask. */
+    int possibleMoves()
+        {
+        int moves = 0;
+        for(int action = N; action <= W; action++)
+            if (isPossibleToDoAction(action)) moves |= (1 << action);
+        return moves;
+        }
+
+    protected void doPolicyStep(SimState state)
+        {
+        sensor.setPositionPacX(positionPacX);
+        sensor.setPositionPacY(positionPacY);
+
+        int moves = possibleMoves();
+        int action = lastAction;
+        if (fx % UNITS == 0 && fy % UNITS == 0)    // on a grid location
+            {
+            int ahead = moves & ~(1 << Ghost.reverseOf(lastAction));
+            if (ahead == 0) action = Ghost.reverseOf(lastAction);                   // dead end
+            else if (Integer.bitCount(ahead) == 1 && !sensor.callCheckforGhosts()) action = Integer.numberOfTrailingZeros(ahead);
+            else action = decide(moves);
+            }
+        else if (lastAction == NOTHING || sensor.callCheckforGhosts())
+            action = decide(moves);
+
+        if (action == NOTHING)              // couldn't search
+            {
+            super.doPolicyStep(state);
+            return;
+            }
+        nextAction = action;
+
+        // pac man delays the next action until he can do it, just like Pac
+        if (isPossibleToDoAction(nextAction))
+            performAction(nextAction);
+        else if (isPossibleToDoAction(lastAction))
+            performAction(lastAction);
+        }
+
+    /** Returns the best of the given moves, or NOTHING if the game can't be searched right now. */
+    int decide(int moves)
+        {
+        if (moves == 0) return NOTHING;
+        if (Integer.bitCount(moves) == 1) return Integer.numberOfTrailingZeros(moves);
+
+        GameEvents.PolicyDecision event = new GameEvents.PolicyDecision();
+        event.begin();
+        int action = search.decide(this, moves);
+        if (event.shouldCommit())
+            {
+            event.policy = "mcts";
+            event.tag = tag;
+            event.action = action;
+            event.rollout = pacman.isLookahead();
+            event.commit();
+            }
+        return action;
+        }
+    }
@@ -0,0 +1,45 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+
+/** MCTSPacMan is a PacMan game whose Pacs are MCTSPacs, all sharing the one MCTSSearch.  The search's budgets
+    show up as properties of the model, so they can be changed from the console.  To watch it play, run
+    <tt>new PacManWithUI(new MCTSPacMan(seed)).createController()</tt>. */
+
+public class MCTSPacMan extends PacMan
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The search which decides what the Pacs do.  Set its budgets before the game starts. */
+    public MCTSSearch search = new MCTSSearch();
+
+    public MCTSPacMan(long seed)
+        {
+        super(seed);
+        }
+
+    public double getTimeBudget() { return search.timeBudget; }
+    public void setTimeBudget(double val) { search.timeBudget = val; }
+    public int getMaxRollouts() { return search.maxRollouts; }
+    public void setMaxRollouts(int val) { search.maxRollouts = val; }
+    public int getHorizon() { return search.horizon; }
+    public void setHorizon(int val) { if (val > 0) search.horizon = val; }
+    public int getSearchThreads() { return search.threads; }
+    public void setSearchThreads(int val) { if (val > 0) search.threads = val; }
+
+    protected Pac createPac(int tag, ExplorationMap env)
+        {
+        if (playback != null) return super.createPac(tag, env);
+        return new MCTSPac(this, tag, env, search);
+        }
+
+    public static void main(String[] args)
+        {
+        doLoop(MCTSPacMan.class, args);
+        System.exit(0);
+        }
+    }
@@ -0,0 +1,425 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import ec.util.*;
+import sim.engine.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** MCTSSearch decides what an MCTSPac does next, by Monte Carlo Tree Search (UCT).  To decide, it takes a
+    Snapshot of the game in the middle of the Pac's step and plays the game on from there many times, each time
+    on a copy of the game (a Worker) with the real ghosts, until the Pac has taken horizon steps or died or won
+    the level.  In each such rollout the Pac's choices at the junctions he comes to are made by a search tree,
+    which tries every choice and then favors the ones which worked out best, and once he leaves the tree, at
+    random.  A rollout is worth 0 if the Pac died, 1 if he won the level, and otherwise a bit more than 1/2
+    depending on the points he scored and how close he ended up to the nearest dot.
+
+    <p>Each thread has its own Worker and builds its own tree, and at the end the trees' first choices are
+    added up (root parallelization), so the threads never wait on one another.  The search stops when its
+    time budget or its rollout budget is used up, whichever comes first.  A rollout still going when the time
+    is up is dropped, so a decision takes hardly longer than the time budget: with the default of 10
+    milliseconds it fits comfortably within a frame at 60 frames per second.  With only a rollout
+    budget a decision doesn't depend on timing: the same game makes the same decisions every time.
+
+    <p>The Workers are made once and reused for every decision, so an MCTSSearch should be kept for the whole
+    game, like MCTSPacMan does.  It's not thread-safe: one decision at a time.  If you run many games with
+    MCTSPacs at once, as PacManBatch does, you'll want to set threads to 1.
+*/
+
+public class MCTSSearch implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    /** How long a decision may take, in milliseconds.  0 or less means no limit, in which case maxRollouts must be set. */
+    public double timeBudget = 10;
+
+    /** How many rollouts a decision may take, over all threads.  0 or less means no limit, in which case timeBudget must be set. */
+    public int maxRollouts = 0;
+
+    /** How many steps the Pac takes in a rollout, at most. */
+    public int horizon = 8 * Pac.PAC_DISCRETIZATION;
+
+    /** The UCT exploration constant.  Rollouts are worth between 0 and 1. */
+    public double exploration = 0.7;
+
+    /** How many threads search at once.  Changes take effect at the next decision. */
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    /** How many rollouts the last decision took, over all threads. */
+    public int lastRollouts;
+
+    /** How long the last decision took, in nanoseconds. */
+    public long lastNanos;
+
+    // made again as needed, rather than saved with the model
+    transient Snapshot snapshot;
+    transient Worker[] workers;
+    transient List<Worker> tasks;
+    transient ForkJoinPool pool;
+
+    /** Sets up the Workers for the given game, and the maze's distance table, if need be. */
+    void prepare(PacMan pacman)
+        {
+        if (snapshot == null) snapshot = new Snapshot();
+        if (workers == null || workers.length != Math.max(threads, 1))
+            {
+            workers = new Worker[Math.max(threads, 1)];
+            for(int i = 0; i < workers.length; i++)
+                workers[i] = new Worker(this);
+            tasks = Arrays.asList(workers);
+            if (pool != null) pool.shutdown();
+            pool = (workers.length > 1 ? new ForkJoinPool(workers.length) : null);
+            }
+        for(int i = 0; i < workers.length; i++)
+            workers[i].setUp(pacman);
+        if (DistanceTable.fits(pacman.graph)) pacman.graph.getDistances();
+        }
+
+    /** Returns the action, among the given moves (a bitmask), which the search likes best for the Pac right now,
+        or Agent.NOTHING if the game can't be searched right now or no rollout could be finished in time.  Call this from the Pac's doPolicyStep(...). */
+    public int decide(Pac pac, int moves)
+        {
+        if (timeBudget <= 0 && maxRollouts <= 0)
+            throw new RuntimeException("At least one of timeBudget or maxRollouts must be set, else the search never ends.");
+        long time = System.nanoTime();
+        PacMan pacman = pac.pacman;
+        prepare(pacman);
+
+        snapshot.save(pacman);
+        long deadline = (timeBudget > 0 ? time + (long)(timeBudget * 1.0e6) : Long.MAX_VALUE);
+        for(int i = 0; i < workers.length; i++)
+            {
+            int rollouts = Integer.MAX_VALUE;
+            if (maxRollouts > 0) rollouts = Math.max(1, maxRollouts / workers.length + (i < maxRollouts % workers.length ? 1 : 0));
+            if (!workers[i].begin(pac, moves, pacman.policyRandom.nextLong(), rollouts, deadline))
+                return Agent.NOTHING;
+            }
+
+        if (pool == null) workers[0].call();
+        else
+            {
+            for(Future<Object> future : pool.invokeAll(tasks))
+                {
+                try { future.get(); }
+                catch (Exception e) { throw new RuntimeException(e); }
+                }
+            }
+
+        // add up the trees' first choices: the most visited one wins, and the better one of those
+        int best = Agent.NOTHING;
+        double bestVisits = 0;
+        double bestTotal = 0;
+        lastRollouts = 0;
+        for(int action = Agent.N; action <= Agent.W; action++)
+            {
+            if ((moves & (1 << action)) == 0) continue;
+            double visits = 0;
+            double total = 0;
+            for(int i = 0; i < workers.length; i++)
+                {
+                Node child = workers[i].root.children[action];
+                if (child != null) { visits += child.visits; total += child.total; }
+                }
+            lastRollouts += (int) visits;
+            if (visits > bestVisits || (visits == bestVisits && total > bestTotal))
+                { best = action; bestVisits = visits; bestTotal = total; }
+            }
+        lastNanos = System.nanoTime() - time;
+        return best;                    // NOTHING if no rollout finished in time
+        }
+
+    /** A node of a search tree: a choice at a junction, with how often it was tried and what it was worth in all. */
+    static class Node
+        {
+        /** The choices there were at the junction the first time it was reached, as a bitmask. */
+        int moves;
+        Node[] children = new Node[4];
+        int visits;
+        double total;
+        }
+
+    /** A copy of the game on which rollouts are played.  Its Pacs are RolloutPacs. */
+    static class Worker extends PacMan implements Callable<Object>
+        {
+        private static final long serialVersionUID = 1;
+
+        MCTSSearch search;
+        /** The agents of this game by occupancy slot, which stand in for those of the searched game. */
+        Agent[] agentsBySlot;
+        MersenneTwisterFast rng = new MersenneTwisterFast(0);
+
+        /** The Pac whose choices are made by the tree.  The other Pacs, if any, go at random. */
+        RolloutPac searcher;
+        int rootMoves;
+        int rollouts;
+        long deadline;
+
+        Node root;
+        /** The node of the tree the present rollout is at, or null once it has left the tree. */
+        Node node;
+        Node[] path = new Node[16];
+        int pathLength;
+        /** The maze's distance table, or null if the maze is too big for one.  Then distanceToDot(...) searches. */
+        DistanceTable distances;
+        /** For searching the maze when there's no distance table: the locations in the order they were reached,
+            their distances, and which ones were reached this time, those with reached[location] == stamp. */
+        int[] queue;
+        int[] queueDistances;
+        int[] reached;
+        int stamp;
+
+        Worker(MCTSSearch search)
+            {
+            super(0);
+            this.search = search;
+            verbose = false;
+            animate = false;
+            maxLevelsWon = 0;
+            }
+
+        /** Makes this game like the searched one: the same mazes and numbers of Pacs and ghosts, so that its fields
+            are the same size and it has the same agents.  Starts it again if anything changed. */
+        void setUp(PacMan pacman)
+            {
+            if (agentsBySlot != null && mazeWidth == pacman.mazeWidth && mazeHeight == pacman.mazeHeight &&
+                mazeSeed == pacman.mazeSeed && numPacs == pacman.numPacs && numGhosts == pacman.numGhosts)
+                return;
+            mazeWidth = pacman.mazeWidth;
+            mazeHeight = pacman.mazeHeight;
+            mazeSeed = pacman.mazeSeed;
+            numPacs = pacman.numPacs;
+            numGhosts = pacman.numGhosts;
+            start();
+            agentsBySlot = new Agent[occupancy.numAgents];
+            for(int i = 0; i < agentsBySlot.length; i++)
+                agentsBySlot[i] = occupancy.getAgent(i);
+            }
+
+        protected Pac createPac(int tag, ExplorationMap env)
+            {
+            return new RolloutPac(this, tag, env);
+            }
+
+        boolean isLookahead() { return true; }
+
+        /** Gets ready to search for the given Pac of the snapshot's game.  Returns false if the game can't be copied. */
+        boolean begin(Pac pac, int moves, long seed, int rollouts, long deadline)
+            {
+            Snapshot snapshot = search.snapshot;
+            if (!snapshot.restoreInto(this, agentsBySlot)) return false;
+            searcher = (RolloutPac) snapshot.standIn(pac, agentsBySlot);
+            distances = (DistanceTable.fits(graph) ? graph.getDistances() : null);
+            rootMoves = moves;
+            this.rollouts = rollouts;
+            this.deadline = deadline;
+            rng.setSeed(seed);
+            root = new Node();
+            return true;
+            }
+
+        /** Does rollouts until the budget is used up. */
+        public Object call()
+            {
+            for(int count = 0; count < rollouts && System.nanoTime() < deadline; count++)
+                rollout();
+            return null;
+            }
+
+        /** Plays the game on from the snapshot once, and adds what it was worth to the tree, unless it ran out of time. */
+        void rollout()
+            {
+            Snapshot snapshot = search.snapshot;
+            snapshot.restoreInto(this, agentsBySlot);
+            // the snapshot was taken in the middle of the Pac's step, so we go back to just before it
+            countedSteps--;
+            rebuildSchedule(snapshot.time - 1, snapshot.steps - 1);
+            for(int i = 0; i < pacs.length; i++)
+                if (pacs[i] != null) ((RolloutPac) pacs[i]).first = true;
+
+            node = root;
+            pathLength = 0;
+            path[pathLength++] = root;
+            int startDeaths = deaths;
+            int startLevelsWon = levelsWon;
+            int startScore = score;
+            int end = countedSteps + search.horizon;
+            while(deaths == startDeaths && levelsWon == startLevelsWon &&
+                (countedSteps < end || eventBefore(schedule.getTime() + 1)) && schedule.step(this))
+                if (System.nanoTime() > deadline) return;       // out of time: this one doesn't count
+
+            double value;
+            if (deaths != startDeaths) value = 0;
+            else if (levelsWon != startLevelsWon) value = 1;
+            else
+                {
+                double points = score - startScore;
+                value = 0.5 + 0.45 * points / (points + 100) + 0.05 / (1 + distanceToDot(searcher));
+                }
+            for(int i = 0; i < pathLength; i++)
+                {
+                path[i].visits++;
+                path[i].total += value;
+                }
+            }
+
+        /** Returns true if an event is pending before the given time.  A death or a won level happens half a step
+            or a quarter step after the Pac's step which caused it, and the rollout waits for it. */
+        boolean eventBefore(double time)
+            {
+            for(int i = 0; i < pending.size(); i++)
+                if (pending.get(i).time < time) return true;
+            return false;
+            }
+
+        /** Returns how far the nearest dot or energizer is from the grid location nearest to the Pac. */
+        int distanceToDot(Pac pac)
+            {
+            int x = graph.stx((pac.fx + Agent.UNITS / 2) / Agent.UNITS);
+            int y = graph.sty((pac.fy + Agent.UNITS / 2) / Agent.UNITS);
+            int from = graph.location(x, y);
+            if (distances == null) return searchForDot(from);
+            int best = Integer.MAX_VALUE;
+            // DotField bits and MazeGraph locations are both x + y * width
+            for(int i = 0; i < dots.dots.length; i++)
+                for(long bits = dots.dots[i] | dots.energizers[i]; bits != 0; bits &= bits - 1)
+                    {
+                    int d = distances.distance(from, (i << 6) + Long.numberOfTrailingZeros(bits));
+                    if (d != DistanceTable.UNREACHABLE && d < best) best = d;
+                    }
+            return best;
+            }
+
+        /** Returns how far the nearest dot or energizer is from the given location, searching the maze breadth-first
+            out from it.  The same as the distance table would say, for mazes too big for one. */
+        int searchForDot(int from)
+            {
+            int size = graph.getWidth() * graph.getHeight();
+            if (queue == null || queue.length != size)
+                {
+                queue = new int[size];
+                queueDistances = new int[size];
+                reached = new int[size];
+                stamp = 0;
+                }
+            if (!graph.isOpen(from % graph.getWidth(), from / graph.getWidth())) return Integer.MAX_VALUE;
+            stamp++;
+            int head = 0;
+            int tail = 0;
+            queue[tail] = from;
+            queueDistances[tail++] = 0;
+            reached[from] = stamp;
+            while(head < tail)
+                {
+                int location = queue[head];
+                int distance = queueDistances[head++];
+                if (((dots.dots[location >>> 6] | dots.energizers[location >>> 6]) & (1L << location)) != 0)
+                    return distance;
+                int moves = graph.getMoves(location);
+                for(int action = Agent.N; action <= Agent.W; action++)
+                    {
+                    if ((moves & (1 << action)) == 0) continue;
+                    int next = graph.getNeighbor(location, action);
+                    if (reached[next] == stamp) continue;
+                    reached[next] = stamp;
+                    queue[tail] = next;
+                    queueDistances[tail++] = distance + 1;
+                    }
+                }
+            return Integer.MAX_VALUE;
+            }
+
+        /** Returns the search tree's choice among the given moves, or a random one once the rollout has left the tree.
+            The first time a rollout comes to a node with choices it hasn't tried, it tries one and leaves the tree. */
+        int choose(int moves)
+            {
+            if (node == null) return random(moves);
+            if (node.moves == 0) node.moves = moves;
+            if ((moves & node.moves) == 0) { node = null; return random(moves); }
+            moves &= node.moves;                // the ghosts aren't always in the same places when we get here
+
+            int untried = 0;
+            for(int action = Agent.N; action <= Agent.W; action++)
+                if ((moves & (1 << action)) != 0 && node.children[action] == null) untried |= (1 << action);
+            int action;
+            if (untried != 0)
+                {
+                action = random(untried);
+                node.children[action] = new Node();
+                }
+            else
+                {
+                action = Agent.NOTHING;
+                double best = Double.NEGATIVE_INFINITY;
+                double log = Math.log(node.visits);
+                for(int a = Agent.N; a <= Agent.W; a++)
+                    {
+                    if ((moves & (1 << a)) == 0) continue;
+                    Node child = node.children[a];
+                    double ucb = child.total / child.visits + search.exploration * Math.sqrt(log / child.visits);
+                    if (ucb > best) { best = ucb; action = a; }
+                    }
+                }
+
+            Node child = node.children[action];
+            if (pathLength == path.length) path = Arrays.copyOf(path, path.length * 2);
+            path[pathLength++] = child;
+            node = (untried != 0 ? null : child);
+            return action;
+            }
+
+        /** Returns one of the given moves (a bitmask) at random, or NOTHING if there are none. */
+        int random(int moves)
+            {
+            int count = Integer.bitCount(moves);
+            if (count == 0) return Agent.NOTHING;
+            for(int n = rng.nextInt(count); n > 0; n--)
+                moves &= moves - 1;
+            return Integer.numberOfTrailingZeros(moves);
+            }
+        }
+
+    /** The Pac of a Worker.  At a junction, or at the start of a rollout, he asks the Worker what to do.  Elsewhere
+        he keeps going, around corners too. */
+    static class RolloutPac extends Pac
+        {
+        private static final long serialVersionUID = 1;
+
+        /** Whether the next step is the first of a rollout, when the Pac is where the searched Pac decides. */
+        boolean first;
+
+        RolloutPac(PacMan pacman, int tag, ExplorationMap env)
+            {
+            super(pacman, tag, env);
+            }
+
+        protected void doPolicyStep(SimState state)
+            {
+            Worker worker = (Worker) pacman;
+            if (first)
+                {
+                first = false;
+                nextAction = (this == worker.searcher ? worker.choose(worker.rootMoves) : lastAction);
+                }
+            else if (fx % UNITS == 0 && fy % UNITS == 0)
+                {
+                int moves = 0;
+                for(int action = N; action <= W; action++)
+                    if (isPossibleToDoAction(action)) moves |= (1 << action);
+                int ahead = moves & ~(1 << Ghost.reverseOf(lastAction));
+                if (ahead == 0) nextAction = Ghost.reverseOf(lastAction);
+                else if (Integer.bitCount(ahead) == 1) nextAction = Integer.numberOfTrailingZeros(ahead);
+                else nextAction = (this == worker.searcher ? worker.choose(ahead) : worker.random(ahead));
+                }
+            else nextAction = lastAction;
+
+            if (isPossibleToDoAction(nextAction))
+                performAction(nextAction);
+            else if (isPossibleToDoAction(lastAction))
+                performAction(lastAction);
+            }
+        }
+    }
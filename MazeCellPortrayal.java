@@ -36,15 +36,16 @@ public class MazeCellPortrayal extends SimplePortrayal2D
 
     public void draw(Object object, Graphics2D g, DrawInfo2D info)
         {
-        int[][] grid = field.field;
         MutableInt2D location = (MutableInt2D)(info.location);
-        int x = location.x;
-        int y = location.y;
-                
-        double ox = info.draw.x;
-        double oy = info.draw.y;
-        double sc = info.draw.width / 2;
-                
+        if ((int)(((MutableDouble)object).val) == 0)  // we're open
+            return;
+        drawWall(g, field.field, location.x, location.y, info.draw.x, info.draw.y, info.draw.width / 2);
+        }
+
+    /** Draws the wall at (x, y) of the given grid, centered at (ox, oy) and sc (half a cell) to a side.  Nothing is
+        drawn for open locations.  MazePortrayal uses this to draw the whole maze into an image at once. */
+    public void drawWall(Graphics2D g, int[][] grid, int x, int y, double ox, double oy, double sc)
+        {
         // only certain grid patterns are allowed in PacMan
         //
         //      O    O    O    X    X    X    X    X    X
@@ -63,15 +64,15 @@ public class MazeCellPortrayal extends SimplePortrayal2D
         //
         //  We identify which patern you have:
                 
-        if ((int)(((MutableDouble)object).val) == 0)  // we're open
+        if (grid[x][y] == 0)  // we're open
             {
             return;
             }
         else            // we're a wall.  Need to draw
             {
             // get the N/S/E/W values
-            int height = field.getHeight() - 1;
-            int width = field.getWidth() - 1;
+            int height = grid[0].length - 1;
+            int width = grid.length - 1;
             int n = (y == 0 ? 1 : grid[x][y-1]);
             int w = (x == 0 ? 1 : grid[x-1][y]);
             int s = (y == height ? 1 : grid[x][y+1]);
@@ -0,0 +1,263 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import ec.util.*;
+import sim.util.*;
+
+/** MazeGenerator makes Pac Man mazes of any size, symmetric left to right like the classic ones, for trying out
+    the game and the Pacs on mazes far bigger than 28 by 35.
+
+    <p>The corridors lie on a lattice with a corridor every third row and column, so there are always walls two
+    thick between them: that's what MazeCellPortrayal needs to draw them (see isLegal(...)).  We make the left half
+    of the maze, then mirror it.  Its corridors are first a random spanning tree of the lattice, so every part of
+    the maze can be reached, then for every dead end another corridor out of it, and last a few more at random so
+    there are loops to run around.  The corridors right in the middle join the two halves.
+
+    <p>The middle of the maze is laid out like the classic mazes: the ghosts' house, with a corridor all the way
+    around it and Blinky above it, a tunnel through the sides in the row of the house, and the Pacs starting nine
+    rows below it.  The energizers go near the four corners.  So the maze's layout (see MazeGraph) is the same
+    relative to the house as in the classic mazes, and a 28 wide maze has the house exactly where they have it.
+*/
+
+public class MazeGenerator
+    {
+    /** The chance of each corridor not needed to connect the maze or to do away with a dead end. */
+    public static final double LOOPS = 0.2;
+
+    int width;
+    int height;
+    MersenneTwisterFast random;
+
+    /** The lattice: the x locations of the columns of the left half, west to east, and the y locations of the rows. */
+    int[] xs;
+    int[] ys;
+    int numColumns;
+    int numRows;
+    /** The row of the house, in the lattice. */
+    int houseRow;
+
+    /** For each node of the lattice (column + row * numColumns), whether the corridor going east from it is there,
+        and whether the corridor going south from it is there.  East of the last column is the corridor across the
+        middle of the maze, to the mirror image of the node. */
+    boolean[] east;
+    boolean[] south;
+
+    /** Sets up a generator of mazes of the given size.  The width must be even and at least 12, and the height at
+        least 15. */
+    public MazeGenerator(int width, int height, long seed)
+        {
+        if (width < 12 || height < 15 || width % 2 != 0)
+            throw new RuntimeException("A generated maze must be an even width of at least 12 and at least 15 high, not " + width + " by " + height);
+        this.width = width;
+        this.height = height;
+        random = new MersenneTwisterFast(seed);
+
+        // the house's exit is at (width / 2 - 0.5, exitY), with the ring around the house three rows either side,
+        // and the Pacs' row nine below
+        int exitY = Math.max(4, Math.min(height - 11, height / 2 - 1));
+        int middle = width / 2 - 2;         // the last column of the left half, just west of the exit
+        numColumns = (middle - 1) / 3 + 1;
+        xs = new int[numColumns];
+        for(int i = 0; i < numColumns; i++)
+            xs[i] = middle - 3 * (numColumns - 1 - i);
+        int first = exitY - 3 - 3 * ((exitY - 4) / 3);
+        numRows = (height - 2 - first) / 3 + 1;
+        ys = new int[numRows];
+        for(int j = 0; j < numRows; j++)
+            ys[j] = first + 3 * j;
+        houseRow = (exitY - first) / 3;
+        }
+
+    int node(int column, int row) { return column + row * numColumns; }
+
+    /** Returns true if the corridor east (or across the middle) of the node may be there. */
+    boolean canGoEast(int column, int row)
+        {
+        return !(row == houseRow && column >= numColumns - 2);
+        }
+
+    /** Returns true if the corridor south of the node may be there. */
+    boolean canGoSouth(int column, int row)
+        {
+        return row < numRows - 1 && !(column == numColumns - 1 && (row == houseRow - 1 || row == houseRow));
+        }
+
+    /** Returns true if the corridor east (or across the middle) of the node must be there. */
+    boolean mustGoEast(int column, int row)
+        {
+        return (column == numColumns - 2 && (row == houseRow - 1 || row == houseRow + 1)) ||
+            (column == numColumns - 1 && (row == houseRow - 1 || row == houseRow + 1 || row == houseRow + 3));
+        }
+
+    /** Returns true if the corridor south of the node must be there. */
+    boolean mustGoSouth(int column, int row)
+        {
+        return column == numColumns - 2 && (row == houseRow - 1 || row == houseRow);
+        }
+
+    /** Returns the number of corridors out of the node, counting the tunnel. */
+    int degree(int column, int row)
+        {
+        int degree = 0;
+        if (east[node(column, row)]) degree++;
+        if (south[node(column, row)]) degree++;
+        if (column > 0 && east[node(column - 1, row)]) degree++;
+        if (row > 0 && south[node(column, row - 1)]) degree++;
+        if (column == 0 && row == houseRow) degree++;
+        return degree;
+        }
+
+    int find(int[] parents, int node)
+        {
+        while(parents[node] != node)
+            node = parents[node] = parents[parents[node]];
+        return node;
+        }
+
+    /** Generates a maze and returns it compiled, with its layout, under the given name. */
+    public MazeGraph generate(String name)
+        {
+        int numNodes = numColumns * numRows;
+        east = new boolean[numNodes];
+        south = new boolean[numNodes];
+
+        // the corridors in the left half, as node * 2 for east and node * 2 + 1 for south
+        int[] corridors = new int[numNodes * 2];
+        int numCorridors = 0;
+        int[] parents = new int[numNodes];
+        for(int n = 0; n < numNodes; n++) parents[n] = n;
+        for(int row = 0; row < numRows; row++)
+            for(int column = 0; column < numColumns; column++)
+                {
+                int n = node(column, row);
+                if (mustGoEast(column, row))
+                    {
+                    east[n] = true;
+                    if (column < numColumns - 1) parents[find(parents, n)] = find(parents, n + 1);
+                    }
+                else if (column < numColumns - 1 && canGoEast(column, row)) corridors[numCorridors++] = n * 2;
+                if (mustGoSouth(column, row))
+                    {
+                    south[n] = true;
+                    parents[find(parents, n)] = find(parents, n + numColumns);
+                    }
+                else if (canGoSouth(column, row)) corridors[numCorridors++] = n * 2 + 1;
+                }
+
+        // a random spanning tree of the rest
+        for(int i = numCorridors - 1; i > 0; i--)
+            {
+            int j = random.nextInt(i + 1);
+            int c = corridors[i]; corridors[i] = corridors[j]; corridors[j] = c;
+            }
+        for(int i = 0; i < numCorridors; i++)
+            {
+            int n = corridors[i] >> 1;
+            int other = ((corridors[i] & 1) == 0 ? n + 1 : n + numColumns);
+            int a = find(parents, n);
+            int b = find(parents, other);
+            if (a == b) continue;
+            parents[a] = b;
+            if ((corridors[i] & 1) == 0) east[n] = true;
+            else south[n] = true;
+            }
+
+        // no dead ends: each one gets another corridor, to another dead end if there is one next to it
+        int[] choices = new int[4];
+        for(int row = 0; row < numRows; row++)
+            for(int column = 0; column < numColumns; column++)
+                {
+                if ((column == numColumns - 1 && row == houseRow) || degree(column, row) != 1) continue;
+                int numChoices = 0;
+                boolean deadEnd = false;
+                for(int action = Agent.N; action <= Agent.W; action++)
+                    {
+                    int c = -1;
+                    int other = -1;
+                    switch(action)
+                        {
+                        case Agent.N: if (row > 0 && canGoSouth(column, row - 1)) { c = node(column, row - 1) * 2 + 1; other = node(column, row - 1); } break;
+                        case Agent.E: if (canGoEast(column, row)) { c = node(column, row) * 2; other = (column < numColumns - 1 ? node(column + 1, row) : -1); } break;
+                        case Agent.S: if (canGoSouth(column, row)) { c = node(column, row) * 2 + 1; other = node(column, row + 1); } break;
+                        case Agent.W: if (column > 0 && canGoEast(column - 1, row)) { c = node(column - 1, row) * 2; other = node(column - 1, row); } break;
+                        }
+                    if (c < 0 || ((c & 1) == 0 ? east[c >> 1] : south[c >> 1])) continue;
+                    boolean otherDeadEnd = (other >= 0 && degree(other % numColumns, other / numColumns) == 1);
+                    if (otherDeadEnd && !deadEnd) { numChoices = 0; deadEnd = true; }
+                    if (otherDeadEnd == deadEnd) choices[numChoices++] = c;
+                    }
+                int c = choices[random.nextInt(numChoices)];
+                if ((c & 1) == 0) east[c >> 1] = true;
+                else south[c >> 1] = true;
+                }
+
+        // and some loops
+        for(int row = 0; row < numRows; row++)
+            for(int column = 0; column < numColumns; column++)
+                {
+                int n = node(column, row);
+                if (!east[n] && canGoEast(column, row) && random.nextBoolean(LOOPS)) east[n] = true;
+                if (!south[n] && canGoSouth(column, row) && random.nextBoolean(LOOPS)) south[n] = true;
+                }
+
+        // carve out the corridors, the tunnel, and the inside of the house, and mirror them
+        int[][] field = new int[width][height];
+        for(int x = 0; x < width; x++)
+            java.util.Arrays.fill(field[x], 1);
+        for(int row = 0; row < numRows; row++)
+            for(int column = 0; column < numColumns; column++)
+                {
+                int n = node(column, row);
+                int x = xs[column];
+                int y = ys[row];
+                if (east[n])
+                    for(int i = x; i <= (column < numColumns - 1 ? xs[column + 1] : width - 1 - x); i++)
+                        open(field, i, y);
+                if (south[n])
+                    for(int j = y; j <= ys[row + 1]; j++)
+                        open(field, x, j);
+                }
+        int exitY = ys[houseRow];
+        for(int x = 0; x <= xs[0]; x++)
+            open(field, x, exitY);
+        for(int x = xs[numColumns - 1]; x <= width / 2; x++)
+            open(field, x, exitY);
+
+        int left = xs[0];
+        int right = width - 1 - left;
+        int top = ys[1];
+        int bottom = ys[numRows - 2];
+        return new MazeGraph(name, field, new Double2D(width / 2 - 0.5, exitY + 9), new Double2D(width / 2 - 0.5, exitY),
+            new int[] { left, top, right, top, left, bottom, right, bottom });
+        }
+
+    /** Opens (x, y) and its mirror image. */
+    void open(int[][] field, int x, int y)
+        {
+        field[x][y] = 0;
+        field[width - 1 - x][y] = 0;
+        }
+
+    /** Returns true if MazeCellPortrayal can draw the maze: no wall has open locations on two opposite sides.
+        Outside the maze counts as wall. */
+    public static boolean isLegal(int[][] field)
+        {
+        int width = field.length;
+        int height = width == 0 ? 0 : field[0].length;
+        for(int x = 0; x < width; x++)
+            for(int y = 0; y < height; y++)
+                {
+                if (field[x][y] == 0) continue;
+                boolean n = y > 0 && field[x][y - 1] == 0;
+                boolean s = y < height - 1 && field[x][y + 1] == 0;
+                boolean w = x > 0 && field[x - 1][y] == 0;
+                boolean e = x < width - 1 && field[x + 1][y] == 0;
+                if ((n && s) || (e && w)) return false;
+                }
+        return true;
+        }
+    }
@@ -0,0 +1,284 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import sim.util.Double2D;
+
+/** MazeGraph is a compiled form of a maze which answers the questions the agents keep asking
+    ("is this a wall?", "can I go north from here?", "where do I end up if I go west?") with a
+    single array lookup.  It is built once per maze from the maze's int[][] field (1 is wall,
+    0 is open space) and never changes afterwards, so all PacMan instances playing the same maze
+    share one MazeGraph.
+
+    <p>Grid locations are numbered x + y * width.  For every location we store a bitmask of the
+    directions (N, E, S, W as in Agent) in which the neighboring location is open, and for every
+    direction the number of the neighboring location.  Like the rest of the game the maze is toroidal,
+    so going west from x = 0 takes you to x = width - 1: that's how the tunnels work.
+
+    <p>On top of that, the open locations form a graph of junctions connected by corridors.  A
+    junction is an open location that does not have exactly two open neighbors: intersections where
+    an agent has a real choice, and dead ends.  Corridors (including corners) are the chains of
+    locations with exactly two open neighbors which lead from one junction to the next.
+
+    <p>A maze also has a layout: where the Pacs start, where the ghosts' house is, and where the energizers go.
+    The classic mazes all share one, which is what you get if you don't give one.  MazeGenerator makes mazes of
+    any size with their own.
+*/
+
+public class MazeGraph implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    /** Returned by the neighbor and junction lookups when there is nothing there. */
+    public static final int NONE = -1;
+
+    String name;
+    int width;
+    int height;
+    int[][] field;
+
+    /** For each location, bit (1 << action) is set if the neighbor in the direction of action is open. */
+    byte[] moves;
+    /** For each location and action, at location * 4 + action, the neighboring location in that direction. */
+    int[] neighbors;
+    /** The number of open locations. */
+    int numOpen;
+    /** For each location, its junction number, or NONE if it's a wall or a corridor. */
+    int[] junction;
+    /** For each junction, its location. */
+    int[] junctions;
+    /** For each junction and action, at junction * 4 + action, the junction reached by following the corridor
+        in that direction, or NONE if there is a wall in that direction. */
+    int[] corridorEnd;
+    /** For each junction and action, at junction * 4 + action, the number of steps to the junction at the
+        end of the corridor, or 0 if there is a wall in that direction. */
+    int[] corridorLength;
+
+    /** Where the Pacs start. */
+    Double2D pacStart;
+    /** The exit of the ghosts' house.  The ghosts wait in the house in its row, and leave going north. */
+    Double2D houseExit;
+    /** The energizers' locations, x and y in turn. */
+    int[] energizers;
+
+    /** Mazes with more fixed-point grid line locations than this don't cache their Double2Ds: the cache would take
+        hundreds of megabytes. */
+    static final int MAX_CACHED_POINTS = 1 << 24;
+
+    /** Double2D locations of the agents on the vertical grid lines (fx a whole grid location), at
+        fy + (fx / Agent.UNITS) * height * Agent.UNITS.  Filled in as they are asked for. */
+    transient Double2D[] verticalPoints;
+    /** The same, for the horizontal grid lines (fy a whole grid location), at fx + (fy / Agent.UNITS) * width * Agent.UNITS. */
+    transient Double2D[] horizontalPoints;
+
+    /** The all-pairs distance table of this maze, computed when first asked for. */
+    transient DistanceTable distances;
+
+    /** The ghosts' decision table for this maze, made when first asked for. */
+    transient DecisionTable decisions;
+
+    /** Compiles a maze, given as field[x][y] with 1 for walls and 0 for open space, with the layout of the classic
+        mazes.  The name identifies the maze (typically its file) and is used to cache things computed about it,
+        such as its distance table. */
+    public MazeGraph(String name, int[][] field)
+        {
+        this(name, field, new Double2D(13.5, 25), new Double2D(13.5, 16), new int[] { 1, 5, 26, 5, 1, 25, 26, 25 });
+        }
+
+    /** Compiles a maze, given as field[x][y] with 1 for walls and 0 for open space, with the given layout.  The
+        energizers are given as x and y in turn. */
+    public MazeGraph(String name, int[][] field, Double2D pacStart, Double2D houseExit, int[] energizers)
+        {
+        this.name = name;
+        this.pacStart = pacStart;
+        this.houseExit = houseExit;
+        this.energizers = energizers.clone();
+        width = field.length;
+        height = width == 0 ? 0 : field[0].length;
+        this.field = new int[width][];
+        for(int x = 0; x < width; x++)
+            this.field[x] = field[x].clone();
+
+        int size = width * height;
+        moves = new byte[size];
+        neighbors = new int[size * 4];
+        junction = new int[size];
+
+        int numJunctions = 0;
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++)
+                {
+                int loc = x + y * width;
+                neighbors[loc * 4 + Agent.N] = stx(x) + sty(y - 1) * width;
+                neighbors[loc * 4 + Agent.E] = stx(x + 1) + sty(y) * width;
+                neighbors[loc * 4 + Agent.S] = stx(x) + sty(y + 1) * width;
+                neighbors[loc * 4 + Agent.W] = stx(x - 1) + sty(y) * width;
+                int m = 0;
+                for(int action = Agent.N; action <= Agent.W; action++)
+                    {
+                    int n = neighbors[loc * 4 + action];
+                    if (field[n % width][n / width] == 0) m |= (1 << action);
+                    }
+                moves[loc] = (byte) m;
+                if (field[x][y] == 0) numOpen++;
+                junction[loc] = (field[x][y] == 0 && Integer.bitCount(m) != 2) ? numJunctions++ : NONE;
+                }
+
+        junctions = new int[numJunctions];
+        for(int loc = 0; loc < size; loc++)
+            if (junction[loc] != NONE) junctions[junction[loc]] = loc;
+
+        // follow the corridors out of each junction
+        corridorEnd = new int[numJunctions * 4];
+        corridorLength = new int[numJunctions * 4];
+        for(int j = 0; j < numJunctions; j++)
+            for(int action = Agent.N; action <= Agent.W; action++)
+                {
+                corridorEnd[j * 4 + action] = NONE;
+                if ((moves[junctions[j]] & (1 << action)) == 0) continue;
+                int loc = junctions[j];
+                int heading = action;
+                int length = 0;
+                do
+                    {
+                    loc = neighbors[loc * 4 + heading];
+                    length++;
+                    if (junction[loc] != NONE) break;
+                    // a corridor location has exactly two ways out; take the one we didn't come in from
+                    int out = moves[loc] & ~(1 << Ghost.reverseOf(heading));
+                    heading = Integer.numberOfTrailingZeros(out);
+                    }
+                while (length <= size);         // can't happen unless the maze is broken
+                corridorEnd[j * 4 + action] = junction[loc];
+                corridorLength[j * 4 + action] = length;
+                }
+        }
+
+    /** Returns where the Pacs start. */
+    public Double2D getPacStart() { return pacStart; }
+
+    /** Returns the exit of the ghosts' house. */
+    public Double2D getHouseExit() { return houseExit; }
+
+    /** Returns the number of energizers. */
+    public int getNumEnergizers() { return energizers.length / 2; }
+
+    /** Returns the x location of energizer i. */
+    public int getEnergizerX(int i) { return energizers[i * 2]; }
+
+    /** Returns the y location of energizer i. */
+    public int getEnergizerY(int i) { return energizers[i * 2 + 1]; }
+
+    /** Returns true if (x, y) is in the ghosts' house, where there are no dots: the row of the exit, two grid
+        locations either side of it. */
+    public boolean isInHouse(int x, int y) { return y == (int) houseExit.y && Math.abs(x + 0.5 - houseExit.x) <= 2; }
+
+    /** Returns the name of the maze, typically its file. */
+    public String getName() { return name; }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /** Returns the maze as field[x][y], 1 for walls and 0 for open space.  Don't modify it. */
+    public int[][] getField() { return field; }
+
+    /** Wraps x toroidally, assuming it is at most one maze width off. */
+    public int stx(int x) { if (x >= 0) { if (x < width) return x; return x - width; } return x + width; }
+
+    /** Wraps y toroidally, assuming it is at most one maze height off. */
+    public int sty(int y) { if (y >= 0) { if (y < height) return y; return y - height; } return y + height; }
+
+    /** Returns the number of the location (x, y), which is x + y * width. */
+    public int location(int x, int y) { return x + y * width; }
+
+    /** Returns true if (x, y) is open.  x and y are wrapped toroidally. */
+    public boolean isOpen(int x, int y) { return field[stx(x)][sty(y)] == 0; }
+
+    /** Returns true if (x, y) is a wall.  x and y are wrapped toroidally. */
+    public boolean isWall(int x, int y) { return field[stx(x)][sty(y)] != 0; }
+
+    /** Returns the bitmask of the directions in which the neighbor of (x, y) is open.  Bit (1 << action) stands for action. */
+    public int getMoves(int x, int y) { return moves[x + y * width]; }
+
+    /** Returns the bitmask of the directions in which the neighbor of the given location is open. */
+    public int getMoves(int location) { return moves[location]; }
+
+    /** Returns true if an agent sitting exactly on (x, y) can do the given action without running into a wall. */
+    public boolean canMove(int x, int y, int action) { return (moves[x + y * width] & (1 << action)) != 0; }
+
+    /** Returns the location you get to by doing the given action from the given location, wrapping around
+        through the tunnels.  The neighbor may be a wall. */
+    public int getNeighbor(int location, int action) { return neighbors[location * 4 + action]; }
+
+    /** Returns the number of open locations. */
+    public int getNumOpen() { return numOpen; }
+
+    /** Returns the number of junctions. */
+    public int getNumJunctions() { return junctions.length; }
+
+    /** Returns the junction number of the given location, or NONE if it's not a junction. */
+    public int getJunction(int location) { return junction[location]; }
+
+    /** Returns the location of the given junction. */
+    public int getJunctionLocation(int junction) { return junctions[junction]; }
+
+    /** Returns the junction at the end of the corridor leaving the given junction in the direction of
+        action, or NONE if there's a wall that way. */
+    public int getCorridorEnd(int junction, int action) { return corridorEnd[junction * 4 + action]; }
+
+    /** Returns the number of steps along the corridor leaving the given junction in the direction of
+        action, or 0 if there's a wall that way. */
+    public int getCorridorLength(int junction, int action) { return corridorLength[junction * 4 + action]; }
+    
+    /** Returns the Double2D for the given fixed-point location (Agent.UNITS per grid location).  Agents
+        almost always move along the grid lines, so those points are cached and shared rather than allocated
+        on every move; anywhere else, or on very big mazes, we just make a new one.  Double2D is immutable, so
+        sharing is safe. */
+    public Double2D getPoint(int fx, int fy)
+        {
+        Double2D[] points;
+        int index;
+        if ((long) width * height * Agent.UNITS > MAX_CACHED_POINTS)
+            return new Double2D(fx / (double) Agent.UNITS, fy / (double) Agent.UNITS);
+        else if (fx % Agent.UNITS == 0)
+            {
+            if (verticalPoints == null) verticalPoints = new Double2D[width * height * Agent.UNITS];
+            points = verticalPoints;
+            index = fy + (fx / Agent.UNITS) * height * Agent.UNITS;
+            }
+        else if (fy % Agent.UNITS == 0)
+            {
+            if (horizontalPoints == null) horizontalPoints = new Double2D[width * height * Agent.UNITS];
+            points = horizontalPoints;
+            index = fx + (fy / Agent.UNITS) * width * Agent.UNITS;
+            }
+        else return new Double2D(fx / (double) Agent.UNITS, fy / (double) Agent.UNITS);
+
+        if (index < 0 || index >= points.length)         // off the maze; shouldn't happen
+            return new Double2D(fx / (double) Agent.UNITS, fy / (double) Agent.UNITS);
+        Double2D point = points[index];
+        if (point == null)
+            points[index] = point = new Double2D(fx / (double) Agent.UNITS, fy / (double) Agent.UNITS);
+        return point;
+        }
+
+    /** Returns the maze distance table, loading it from the disk cache or computing it the first time it's asked for.
+        Throws a RuntimeException if the maze is too big for one: see DistanceTable.fits(...). */
+    public synchronized DistanceTable getDistances()
+        {
+        if (distances == null)
+            distances = DistanceTable.load(this);
+        return distances;
+        }
+
+    /** Returns the ghosts' decision table, making it the first time it's asked for.  It fills itself in as it's used. */
+    public synchronized DecisionTable getDecisions()
+        {
+        if (decisions == null)
+            decisions = new DecisionTable(this);
+        return decisions;
+        }
+    }
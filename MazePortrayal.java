@@ -0,0 +1,95 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import sim.portrayal.*;
+import java.awt.*;
+import java.awt.image.*;
+
+/** A FieldPortrayal2D which draws the maze's walls.  Working out and stroking the curves and lines of every wall
+    cell takes most of the time of drawing a frame, yet the walls only change with the maze.  So the walls are drawn
+    once, with MazeCellPortrayal, into an image compatible with the screen, and every frame just copies the image.
+
+    <p>The image is drawn again when the maze changes (a new level, or the game is reset or loaded) or the display is
+    scaled, or after invalidate().  Like DotPortrayal it has no field of its own but asks the model for its current
+    maze. */
+
+public class MazePortrayal extends FieldPortrayal2D
+    {
+    private static final long serialVersionUID = 1;
+
+    /** Extra pixels around the image, so that the strokes along the edges of the maze aren't cut off. */
+    static final int PAD = 2;
+
+    PacManWithUI ui;
+    MazeCellPortrayal cell = new MazeCellPortrayal(null);
+
+    transient BufferedImage image;
+    /** What the image was drawn for: the maze, and the size and subpixel position of the field on the display. */
+    MazeGraph imageGraph;
+    double imageWidth;
+    double imageHeight;
+    double imageFractionX;
+    double imageFractionY;
+
+    public MazePortrayal(PacManWithUI ui) { this.ui = ui; }
+
+    /** Throws away the image, so that it's drawn again the next time the maze is. */
+    public void invalidate()
+        {
+        image = null;
+        imageGraph = null;
+        }
+
+    public void draw(Object object, Graphics2D graphics, DrawInfo2D info)
+        {
+        PacMan pacman = (PacMan)(ui.state);
+        if (pacman.maze == null || pacman.graph == null) return;
+
+        int ix = (int) Math.floor(info.draw.x) - PAD;
+        int iy = (int) Math.floor(info.draw.y) - PAD;
+        double fx = info.draw.x - Math.floor(info.draw.x);
+        double fy = info.draw.y - Math.floor(info.draw.y);
+
+        if (image == null || imageGraph != pacman.graph || imageWidth != info.draw.width || imageHeight != info.draw.height ||
+            imageFractionX != fx || imageFractionY != fy)
+            {
+            image = render(pacman.maze.field, graphics.getDeviceConfiguration(), info.draw.width, info.draw.height, fx, fy);
+            imageGraph = pacman.graph;
+            imageWidth = info.draw.width;
+            imageHeight = info.draw.height;
+            imageFractionX = fx;
+            imageFractionY = fy;
+            }
+
+        graphics.drawImage(image, ix, iy, null);
+        }
+
+    /** Draws the walls of the grid into a new transparent image of a field of the given size, whose top left corner
+        is at (PAD + fx, PAD + fy) in the image. */
+    BufferedImage render(int[][] grid, GraphicsConfiguration configuration, double width, double height, double fx, double fy)
+        {
+        int gridWidth = grid.length;
+        int gridHeight = gridWidth == 0 ? 0 : grid[0].length;
+        int w = (int) Math.ceil(width + fx) + 2 * PAD;
+        int h = (int) Math.ceil(height + fy) + 2 * PAD;
+
+        BufferedImage image = (configuration == null ?
+            new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB) :
+            configuration.createCompatibleImage(w, h, Transparency.TRANSLUCENT));
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        double xScale = width / gridWidth;
+        double yScale = height / gridHeight;
+        for(int x = 0; x < gridWidth; x++)
+            for(int y = 0; y < gridHeight; y++)
+                // as ValueGridPortrayal2D would, give each cell its center
+                cell.drawWall(g, grid, x, y, PAD + fx + x * xScale + xScale / 2.0, PAD + fy + y * yScale + yScale / 2.0, xScale / 2.0);
+        g.dispose();
+        return image;
+        }
+    }
@@ -0,0 +1,195 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import sim.util.*;
+import ec.util.*;
+
+/** Occupancy keeps track of which grid location (tile) each agent is in.  Each agent gets a slot number,
+    and each tile holds a bucket of the slots of the agents whose location floors to it: two linked lists,
+    one of Pacs and one of ghosts, threaded through the slots.  Agents report every move through
+    Agent.setLocation(...), so the index is always up to date, and "who is around (x, y)?" is a few array
+    reads rather than a Continuous2D neighborhood query which allocates a Bag.  It's just as quick with
+    hundreds of agents as with a handful, since a query only looks at the tiles it covers.
+
+    <p>To go through the ghosts on a tile:
+    <pre>for(int slot = occupancy.getFirstGhost(x, y); slot >= 0; slot = occupancy.getNext(slot)) ...</pre>
+
+    <p>Like Continuous2D, Occupancy doesn't wrap around: tiles outside the maze are simply empty.
+*/
+
+public class Occupancy implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    int width;
+    int height;
+    /** For each tile x + y * width, the first slot of the Pacs on it, or -1. */
+    int[] firstPac;
+    /** For each tile, the first slot of the ghosts on it, or -1. */
+    int[] firstGhost;
+    /** For each slot, the next and the previous slot on the same tile and of the same kind, or -1. */
+    int[] next = new int[8];
+    int[] prev = new int[8];
+    /** The agents, by slot. */
+    Agent[] agents = new Agent[8];
+    /** The tile each slot is presently on, or -1. */
+    int[] tiles = new int[8];
+    int numAgents;
+
+    public Occupancy(int width, int height)
+        {
+        this.width = width;
+        this.height = height;
+        firstPac = new int[width * height];
+        firstGhost = new int[width * height];
+        clear();
+        }
+
+    /** Removes all the agents. */
+    public void clear()
+        {
+        java.util.Arrays.fill(firstPac, -1);
+        java.util.Arrays.fill(firstGhost, -1);
+        java.util.Arrays.fill(agents, null);
+        numAgents = 0;
+        }
+
+    /** Adds an agent, not yet on any tile, and returns its slot. */
+    public int add(Agent agent)
+        {
+        if (numAgents == agents.length)
+            {
+            int size = agents.length * 2;
+            agents = java.util.Arrays.copyOf(agents, size);
+            tiles = java.util.Arrays.copyOf(tiles, size);
+            next = java.util.Arrays.copyOf(next, size);
+            prev = java.util.Arrays.copyOf(prev, size);
+            }
+        agents[numAgents] = agent;
+        tiles[numAgents] = -1;
+        return numAgents++;
+        }
+
+    /** Moves the agent in the given slot to the tile (x, y). */
+    public void move(int slot, int x, int y)
+        {
+        int tile = (x >= 0 && y >= 0 && x < width && y < height) ? x + y * width : -1;
+        int old = tiles[slot];
+        if (old == tile) return;
+        int[] first = (agents[slot] instanceof Pac ? firstPac : firstGhost);
+
+        if (old >= 0)
+            {
+            if (prev[slot] >= 0) next[prev[slot]] = next[slot];
+            else first[old] = next[slot];
+            if (next[slot] >= 0) prev[next[slot]] = prev[slot];
+            }
+        if (tile >= 0)
+            {
+            next[slot] = first[tile];
+            prev[slot] = -1;
+            if (first[tile] >= 0) prev[first[tile]] = slot;
+            first[tile] = slot;
+            }
+        tiles[slot] = tile;
+        }
+
+    /** Takes the agent in the given slot off the maze, for instance a Pac who died while another one plays on.
+        It keeps its slot. */
+    public void remove(int slot)
+        {
+        move(slot, -1, -1);
+        }
+
+    /** Returns the agent in the given slot. */
+    public Agent getAgent(int slot) { return agents[slot]; }
+
+    /** Returns the first slot of the Pacs on the tile (x, y), or -1 if there are none. */
+    public int getFirstPac(int x, int y)
+        {
+        if (x < 0 || y < 0 || x >= width || y >= height) return -1;
+        return firstPac[x + y * width];
+        }
+
+    /** Returns the first slot of the ghosts on the tile (x, y), or -1 if there are none. */
+    public int getFirstGhost(int x, int y)
+        {
+        if (x < 0 || y < 0 || x >= width || y >= height) return -1;
+        return firstGhost[x + y * width];
+        }
+
+    /** Returns the slot after the given one on its tile, of the same kind (Pac or ghost), or -1. */
+    public int getNext(int slot) { return next[slot]; }
+
+    /** Returns the Pac closest to (x, y), or null if there are no Pacs on the maze.  If several are equally close,
+        picks one of them at random, with equal probability.  We look at the tiles in rings going outwards from
+        the one (x, y) is on, and stop as soon as the next ring can't hold anything closer. */
+    public Pac getNearestPac(double x, double y, MersenneTwisterFast random)
+        {
+        int tx = Math.max(0, Math.min(width - 1, (int) Math.floor(x)));
+        int ty = Math.max(0, Math.min(height - 1, (int) Math.floor(y)));
+        // how far (x, y) may be outside the tile we start from
+        double outside = Math.max(Math.max(tx - x, x - (tx + 1)), Math.max(ty - y, y - (ty + 1)));
+        int maxRing = Math.max(Math.max(tx, width - 1 - tx), Math.max(ty, height - 1 - ty));
+
+        Pac best = null;
+        double bestDistanceSq = Double.POSITIVE_INFINITY;
+        int count = 0;
+        for(int ring = 0; ring <= maxRing; ring++)
+            {
+            // anything in this ring is at least ring - 1 away along x or y
+            double nearest = ring - 1 - Math.max(0, outside);
+            if (best != null && nearest > 0 && nearest * nearest > bestDistanceSq) break;
+
+            for(int ry = ty - ring; ry <= ty + ring; ry++)
+                {
+                if (ry < 0 || ry >= height) continue;
+                boolean edge = (ry == ty - ring || ry == ty + ring);
+                for(int rx = tx - ring; rx <= tx + ring; rx += (edge ? 1 : 2 * ring))
+                    {
+                    if (rx >= 0 && rx < width)
+                        for(int slot = firstPac[rx + ry * width]; slot >= 0; slot = next[slot])
+                            {
+                            Pac pac = (Pac) agents[slot];
+                            double dx = pac.location.x - x;
+                            double dy = pac.location.y - y;
+                            double distanceSq = dx * dx + dy * dy;
+                            if (distanceSq < bestDistanceSq) { best = pac; bestDistanceSq = distanceSq; count = 1; }
+                            else if (distanceSq == bestDistanceSq && random.nextBoolean(1.0 / (++count))) best = pac;
+                            }
+                    if (ring == 0) break;
+                    }
+                }
+            }
+        return best;
+        }
+
+    /** Puts into result, which is cleared first, the agents within the given distance of (x, y), and returns it. */
+    public Bag getAgentsWithin(double x, double y, double distance, Bag result)
+        {
+        result.clear();
+        int minX = Math.max(0, (int) Math.floor(x - distance));
+        int minY = Math.max(0, (int) Math.floor(y - distance));
+        int maxX = Math.min(width - 1, (int) Math.floor(x + distance));
+        int maxY = Math.min(height - 1, (int) Math.floor(y + distance));
+        double distanceSq = distance * distance;
+        for(int ty = minY; ty <= maxY; ty++)
+            for(int tx = minX; tx <= maxX; tx++)
+                {
+                int tile = tx + ty * width;
+                for(int kind = 0; kind < 2; kind++)
+                    for(int slot = (kind == 0 ? firstPac[tile] : firstGhost[tile]); slot >= 0; slot = next[slot])
+                        {
+                        Agent agent = agents[slot];
+                        double dx = agent.location.x - x;
+                        double dy = agent.location.y - y;
+                        if (dx * dx + dy * dy <= distanceSq) result.add(agent);
+                        }
+                }
+        return result;
+        }
+    }
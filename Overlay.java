@@ -40,23 +40,26 @@ public class Overlay extends FieldPortrayal2D
         if (firstTimeScoreY == 0)
             firstTimeScoreY = (int)((GUTTER + bounds.getHeight()) / 2);
                 
+        // we lay out by info.draw, the whole display, not info.clip: PacManWithUI may be painting just part of it
+
         // if we're paused, say so
         if (((SimpleController)(ui.controller)).getPlayState() == SimpleController.PS_PAUSED)
             {
             bounds = new TextLayout("Paused", font,  graphics.getFontRenderContext()).getBounds();
-            graphics.drawString("Paused", (int)((info.clip.width - bounds.getWidth()) / 2), firstTimeScoreY);
+            graphics.drawString("Paused", (int)((info.draw.width - bounds.getWidth()) / 2), firstTimeScoreY);
             }
         else    // otherwise, show the scores
             {
             graphics.drawString("Deaths: " + pacman.deaths, BORDER, firstTimeScoreY);
-            graphics.drawString("Level: " + pacman.level, (int)((info.clip.width - BORDER * 2) * 1 / 3 + BORDER), firstTimeScoreY);
-            graphics.drawString("Score: " + pacman.score, (int)((info.clip.width - BORDER * 2) * 2 / 3 + BORDER), firstTimeScoreY);
+            graphics.drawString("Level: " + pacman.level, (int)((info.draw.width - BORDER * 2) * 1 / 3 + BORDER), firstTimeScoreY);
+            graphics.drawString("Score: " + pacman.score, (int)((info.draw.width - BORDER * 2) * 2 / 3 + BORDER), firstTimeScoreY);
             }
                 
-        // show the text at bottom
+        // show the text at bottom, or in turbo mode how many steps go by for each one drawn
         String text = "M: MASON   P: Pause   R: Reset   adws / \u2190\u2192\u2191\u2193";
+        if (ui.turbo) text = "Turbo: drawing 1 step in " + ui.getTurboSkip() + "   T: Normal";
         bounds = new TextLayout(text, font,  graphics.getFontRenderContext()).getBounds();
-        graphics.drawString(text, (int)((info.clip.width - bounds.getWidth()) / 2), 
-            (int)((info.clip.height - GUTTER + firstTimeScoreY)));
+        graphics.drawString(text, (int)((info.draw.width - bounds.getWidth()) / 2), 
+            (int)((info.draw.height - GUTTER + firstTimeScoreY)));
         }
     }
\ No newline at end of file
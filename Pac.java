@@ -32,6 +32,13 @@ public class Pac extends Agent implements Steppable
 	/** The current score the Pac receives for eating a ghost. */
 	public int eatGhostScore = 200;
 
+	/** The most eating a ghost can be worth in a crowd of more than four ghosts, where doubling for each one
+	    eaten would soon overflow the score. */
+	public static final int MAX_EAT_GHOST_SCORE = 1600;
+
+	// The agents around us, when there's a crowd of ghosts
+	Bag nearby = new Bag();
+
 	/** The Pac's index in the player array.  This will be used to allow multiple Pacs. */
 	public int tag;
 
@@ -47,7 +54,7 @@ public class Pac extends Agent implements Steppable
 	/** Creates a Pac assigned to the given tag, puts him in pacman.agents at the start location, and schedules him on the schedule.
 	 * Additionally, Pac gets his information of the sensor of his "last life". 
 	 */
-	public Pac(PacMan pacman, int tag, int[][] env) 
+	public Pac(PacMan pacman, int tag, ExplorationMap env) 
 	{
 		super(pacman);
 		this.tag = tag;
@@ -55,127 +62,58 @@ public class Pac extends Agent implements Steppable
 		stopper = pacman.schedule.scheduleRepeating(this, 0, 1);  // schedule at time 0
 
 		sensor = new Sensor(pacman);
+		sensor.pac = this;
 		sensor.sensEnv = env;
 	}
 
 	// the pac's start location
 	public Double2D getStartLocation() { return new Double2D(pacStartX, pacStartY); }
 
+	void saveState(int[] state, int offset)
+	{
+		super.saveState(state, offset);
+		state[offset + 4] = eatGhostScore;
+		state[offset + 5] = nextAction;
+	}
+
+	void restoreState(int[] state, int offset)
+	{
+		super.restoreState(state, offset);
+		eatGhostScore = state[offset + 4];
+		nextAction = state[offset + 5];
+	}
+
 	
 	/**
 	 * We implemented forcePacToGoNorth in order to get him faster out of spots, where we can't find any coins.
 	 * The method forcePacToGo is implemented for every possible direction.
-	 * Those methods, which are called in the getToGo-method, check Pac's perceptions from the past (which are documented in the array 'sensEnv').
-	 * To be more precise: they look up the row or column in which Pac stands and check if Pac saw a space which is marked as unexplored (i.e. if there's a 0).
-	 * The array sensEnv is set to 0 by default, so if Pac sees a wall or a path, he marks a wall with 1 and a path with 2.
-	 * This helps us to read Pac's memories. 
+	 * Those methods, which are called in the getToGo-method, check Pac's perceptions from the past (which are documented in the ExplorationMap 'sensEnv').
+	 * To be more precise: they look up the row or column in which Pac stands and check if Pac saw a space which is marked as unexplored.
+	 * Every location is unexplored by default, so if Pac sees a wall or a path, he marks it as a WALL or a PATH.
+	 * This helps us to read Pac's memories. The map keeps track of the unexplored locations and walls of every row and column,
+	 * so it can answer straight away, without walking along the row or column.
 	 *
-	 * @return E.g. when Pac stands in a column where he has no coins around him, he checks if a 1 or a 0 comes next in his column in the direction of the method.
-	 * If a 0 comes before a 1, forcePacToGo will return true for the relevant direction. Otherwise it will return false. 
+	 * @return E.g. when Pac stands in a column where he has no coins around him, he checks if a wall or an unexplored location comes next in his column in the direction of the method.
+	 * If an unexplored location comes before a wall, forcePacToGo will return true for the relevant direction. Otherwise it will return false. 
 	 */
 	//Check, if there are undiscovered fields in the northern direction.
 	public boolean forcePacToGoNorth (){
-		boolean result = false;
-		
-		//get everything we need... the Array "sensEnv", Pacs position (x&y)
-		int [][] sensEnv = sensor.getSensEnv();
-		sensor.getPositionPacX();
-		sensor.getPositionPacY();
-		
-		int positionPacXInt = (int)positionPacX;
-		int positionPacYInt = (int)positionPacY;		
-		
-		//Check all northern fields in the Array.  
-		//Iterate through a column step by step in the relevant direction.
-		//If Pac saw a path worth exploring (means a path marked with a 0), return true.
-		while (positionPacYInt >= 1){
-			if (sensEnv [positionPacXInt][positionPacYInt - 1] == 0){
-				result = true;
-				return result;
-			}else if (sensEnv [positionPacXInt][positionPacYInt - 1] == 1){
-				return result;
-			}
-			positionPacYInt--;
-		}
-		return result;
+		return sensor.getSensEnv().isUnexploredNorth((int)positionPacX, (int)positionPacY);
 	}
 	
 	//Check, if there are undiscovered fields in Pacs the eastern direction.
 	public boolean forcePacToGoEast (){
-		boolean result = false;
-		
-		//get everything we need... the Array "sensEnv", Pacs position (x&y)
-		int [][] sensEnv = sensor.getSensEnv();
-		sensor.getPositionPacX();
-		sensor.getPositionPacY();
-		
-		int positionPacXInt = (int)positionPacX;
-		int positionPacYInt = (int)positionPacY;		
-		
-		//Check all fields in the eastern direction  
-		//Iterate through a row step by step and check, if Pac saw a path worth exploring.
-		//If Pac saw a path worth exploring (means a path marked with a 0), return true.
-		while (positionPacXInt < 27){
-			if (sensEnv [positionPacXInt + 1][positionPacYInt] == 0){
-				result = true;
-				return result;
-			}else if (sensEnv [positionPacXInt + 1][positionPacYInt] == 1){
-				return result;
-			}
-			positionPacXInt++;
-		}
-		return result;
+		return sensor.getSensEnv().isUnexploredEast((int)positionPacX, (int)positionPacY);
 	}
 
 	//Check, if there are undiscovered fields in Pacs the southern direction.
 	public boolean forcePacToGoSouth (){
-		boolean result = false;
-		int [][] sensEnv = sensor.getSensEnv();
-		sensor.getPositionPacX();
-		sensor.getPositionPacY();
-		
-		int positionPacXInt = (int)positionPacX;
-		int positionPacYInt = (int)positionPacY;		
-		
-		//Check all fields in the southern direction  
-		//Iterate through a column step by step and check, if Pac saw a path worth exploring.
-		//If Pac saw a path worth exploring (means a path marked with a 0), return true.
-		while (positionPacYInt < 34){
-			if (sensEnv [positionPacXInt][positionPacYInt + 1] == 0){
-				result = true;
-				return result;
-			}else if (sensEnv [positionPacXInt][positionPacYInt + 1] == 1){
-				return result;
-			}
-			positionPacYInt++;
-		}
-		return result;
+		return sensor.getSensEnv().isUnexploredSouth((int)positionPacX, (int)positionPacY);
 	}
 	
 	// Here we will check, if there are undiscovered Fields in Pacs row
 	public boolean forcePacToGoWest (){
-		
-		boolean result = false;
-		int [][] sensEnv = sensor.getSensEnv();
-		sensor.getPositionPacX();
-		sensor.getPositionPacY();
-		
-		int positionPacXInt = (int)positionPacX;
-		int positionPacYInt = (int)positionPacY;		
-		
-		//Check all fields in the eastern direction  
-		//Iterate through a row step by step and check, if Pac saw a path worth exploring.
-		//If Pac saw a path worth exploring (means a path marked with a 0), return true.
-		while (positionPacXInt > 0){
-			if (sensEnv [positionPacXInt - 1][positionPacYInt] == 0){
-				result = true;
-				return result;
-			}if (sensEnv [positionPacXInt - 1][positionPacYInt] == 1){
-				return result;
-			}
-			positionPacXInt--;
-		}
-		return result;
+		return sensor.getSensEnv().isUnexploredWest((int)positionPacX, (int)positionPacY);
 	}
 
 	/* Default policy implementation: Pac is controlled through the joystick/keyboard
@@ -188,7 +126,7 @@ public class Pac extends Agent implements Steppable
 		sensor.setPositionPacY(positionPacY);		
 		
 		// Get's Pac going
-		if (positionPacX == 13.5 && positionPacY == 25.0){
+		if (positionPacX == pacStartX && positionPacY == pacStartY){
 			nextAction = getToGo();
 		}
 		// If Pac's Position is even getToGo gets executed
@@ -216,29 +154,45 @@ public class Pac extends Agent implements Steppable
 	}
 
 	/** The Method getToGo says Pac where he should go after checking Pacs surroundings.
-	 * (For this getToGo calls the Methods of the Sensor "getNorth, getEast, getSouth, getWest").
+	 * (For this getToGo calls the Sensor's look(), which sees what "getNorth, getEast, getSouth, getWest" would).
 	 * @returns the direction Pac has to go. 
 	 *   returns 0 for north, 1 for east, 2 for south, 3 for west.
 	 */
-	private int getToGo() {
-		// First, let's check with vision = 1
-		int vision = 1;
+	int getToGo() {
+		GameEvents.PolicyDecision event = new GameEvents.PolicyDecision();
+		event.begin();
+		int action = chooseWay();
+		if (event.shouldCommit()) {
+			event.policy = "getToGo";
+			event.tag = tag;
+			event.action = action;
+			event.rollout = pacman.isLookahead();
+			event.commit();
+		}
+		return action;
+	}
+
+	// How often Pac follows the planner when he could.  If he always did, he could walk into the same ghosts
+	// on the same way to the same coins life after life, and never finish the level.
+	static final double FOLLOW_PLAN = 0.9;
+
+	// The values of the directions in getToGo, kept so that deciding doesn't allocate
+	double[] preferredWay = new double[4];
+
+	/** The decision proper of getToGo(). */
+	private int chooseWay() {
+		// Calls the Sensors perceptions in Pacs environment, all four directions with vision = 1 and 2 at once
+		int look = sensor.look();
 		// Reset array for the values of the sensor check
-		Double[] preferredWay = {0.0, 0.0, 0.0, 0.0};
-		
-		// Calls the Sensors perceptions in Pacs direct environment. x/y +-1 
-		preferredWay[0] = sensor.getNorth(vision);
-		preferredWay[1] = sensor.getEast(vision);
-		preferredWay[2] = sensor.getSouth(vision);
-		preferredWay[3] = sensor.getWest(vision);
+		double[] preferredWay = this.preferredWay;
 		
 		// Randomizes the values in the array with a number from 0.51 to 1 in order to shuffle the possibilities.
 		// By cutting the range of possible random numbers, Pac will always choose a path with Coins if he can.
 		int i = 0;
 		while (i < preferredWay.length) {
-			Double rdm = Math.random() + 0.51;
+			double rdm = pacman.policyRandom.nextDouble() + 0.51;
 			if (rdm > 1.0) rdm = 1.0;
-			preferredWay[i] = preferredWay[i] * rdm;
+			preferredWay[i] = Sensor.near(look, i) * rdm;
 			i++;
 		}
 		
@@ -276,18 +230,32 @@ public class Pac extends Agent implements Steppable
 		// If Pac has only paths without coins around him (maxValue <= 1) and there are no ghosts nearby, we check if there is any path worth exploring.
 		// First we'll look for paths Pac saw, which are steppable and where we can probably find new coins. 
 		// We will think about those paths like normal Paths with coins (Set the direction in our preferredWay-Array to 2.0).
+		// If Pac saw no such path, with frontier planning he goes the way the planner says leads to the nearest coin
+		// or unexplored path, anywhere in the maze, rather than wandering about where he has already been (most of the
+		// time: see FOLLOW_PLAN).
 		if (maxValue <= 1 && sensor.callCheckforGhosts() == false){
+			boolean forced = false;
 			if (forcePacToGoNorth()){
 				preferredWay[0] = 2.0;
+				forced = true;
 			}
 			if (forcePacToGoEast()){
 				preferredWay[1] = 2.0;
+				forced = true;
 			}
 			if (forcePacToGoSouth()){
 				preferredWay[2] = 2.0;
+				forced = true;
 			}
 			if (forcePacToGoWest()){
 				preferredWay[3] = 2.0;
+				forced = true;
+			}
+			if (!forced && pacman.frontierPlanning) {
+				int plannedWay = pacman.getPlanner().nextMove(sensor.positionPacX, sensor.positionPacY, pacman.dots, sensor.sensEnv);
+				if (plannedWay != Agent.NOTHING && preferredWay[plannedWay] > 0 && pacman.policyRandom.nextDouble() < FOLLOW_PLAN) {
+					preferredWay[plannedWay] = 2.0;
+				}
 			}
 		}
 		
@@ -306,20 +274,7 @@ public class Pac extends Agent implements Steppable
 				
 		// standard: path is safe to go.
 		// check for vision = 2 in order to check if there's a ghost coming.
-		double richtRes = 1.0;
-//		System.out.println("Checking for vision = 2");
-		switch (richtIndex) {
-		case 0: richtRes = sensor.getNorth(vision + 1);
-			break;
-		case 1: richtRes = sensor.getEast(vision + 1);
-			break;
-		case 2: richtRes = sensor.getSouth(vision + 1);
-			break;
-		case 3: richtRes = sensor.getWest(vision + 1);
-			break;
-		default:
-			System.out.println("####### This case should never occur. #######");
-		}
+		double richtRes = Sensor.far(look, richtIndex);
 		
 		
 		double maxValue2 = 0.0;
@@ -347,92 +302,162 @@ public class Pac extends Agent implements Steppable
 	 */
 	public void step(SimState state)
 	{
+		GameEvents.AgentStep event = new GameEvents.AgentStep();
+		event.begin();
+
 		pacman.countedSteps++;
 		doPolicyStep(state);
-		// now maybe we eat a dot or energizer...
+		if (pacman.recording != null) pacman.recording.record(nextAction);
+		// now maybe we eat a dot or energizer...  They sit right on the grid, so we gotta be right on top of them.
 
-		Bag nearby = pacman.dots.getNeighborsWithinDistance(new Double2D(location), 0.3);  //0.3 seems reasonable.  We gotta be right on top anyway
-		for(int i=0; i < nearby.numObjs; i++)
+		int x = (int) location.x;
+		int y = (int) location.y;
+		if (x == location.x && y == location.y)
 		{
-			Object obj = nearby.objs[i];
-			if (obj instanceof Energizer && pacman.dots.getObjectLocation(obj).equals(location))  // uh oh
+			boolean ate = false;
+			if (pacman.dots.eatEnergizer(x, y))  // uh oh
 			{
+				ate = true;
 				pacman.score+=40; // only 40 because there is a dot right below the energizer.  Total should appear to be 50
-				pacman.dots.remove(obj);
 				eatGhostScore = 200;  // reset
 				pacman.frightenGhosts = true;
+				dotEaten(x, y, true);
 
 				// create a Steppable to turn off ghost frightening after the ghosts have had a chance to
 				// be sufficiently frightened
-				pacman.schedule.scheduleOnce(new Steppable()  // the pac goes first, then the ghosts, so they'll get frightened this timestep, so we turn it off first thing next time
+				pacman.scheduleEvent(pacman.schedule.getTime() + 1, -1, new PacMan.Event()  // the pac goes first, then the ghosts, so they'll get frightened this timestep, so we turn it off first thing next time
 						{
-					public void step(SimState state)
+					protected void perform(PacMan state)
 					{
 						pacman.frightenGhosts = false;
 					}
-						}, -1);
+						});
 			}
-			if (obj instanceof Dot && pacman.dots.getObjectLocation(obj).equals(location))
+			if (pacman.dots.eatDot(x, y))
 			{
+				ate = true;
 				pacman.score+=10;
-				pacman.dots.remove(obj);
+				dotEaten(x, y, false);
 			}
-		}
-		if (nearby.numObjs > 0)
-			if (pacman.dots.size() == 0)  // empty!
+			if (ate && pacman.dots.isEmpty())  // empty!
 			{
-				pacman.schedule.scheduleOnceIn(0.25, new Steppable()            // so it happens next
+				pacman.scheduleEventIn(0.25, new PacMan.Event()            // so it happens next
 						{
-					public void step(SimState state)
+					protected void perform(PacMan state)
 					{ 
 						// Protocol every win in a level.
-						System.out.println("### Level won!");
-						pacman.levelsWon++;
-						System.out.println("### Levels won: " + pacman.levelsWon);
-
-						// Stop after 500 simulations.
-						if (pacman.levelsWon >= 500) {
-							System.out.println("End of 500 simulations reached. Stopping.");
-							System.exit(0);
+						pacman.levelWon();
+						if (pacman.verbose) {
+							System.out.println("### Level won!");
+							System.out.println("### Levels won: " + pacman.levelsWon);
+						}
+
+						// Stop after maxLevelsWon simulations.  Emptying the schedule ends the run
+						// without taking down the whole JVM, so batch runs can go on with the next game.
+						if (pacman.maxLevelsWon > 0 && pacman.levelsWon >= pacman.maxLevelsWon) {
+							if (pacman.verbose)
+								System.out.println("End of " + pacman.maxLevelsWon + " simulations reached. Stopping.");
+							pacman.clearSchedule();
+							return;
 						}
 						resetLevel();
 					}
 						});  // the Ghosts move a bit more
 			}
+		}
 
 		// a ghost perhaps?
 
-		nearby = pacman.agents.getNeighborsWithinDistance(new Double2D(location), 0.3);  // 0.3 seems reasonable.  We gotta be right on top anyway
-		for(int i=0; i < nearby.numObjs; i++)
+		// there are usually only four of them, so we just check them all.  In a crowd we ask the
+		// occupancy index for those right around us.
+		Object[] ghosts = pacman.ghosts;
+		int numGhosts = ghosts.length;
+		if (numGhosts > 4)
+		{
+			pacman.occupancy.getAgentsWithin(location.x, location.y, 0.5, nearby);
+			ghosts = nearby.objs;
+			numGhosts = nearby.numObjs;
+		}
+		for(int i=0; i < numGhosts; i++)
 		{
-			Object obj = nearby.objs[i];
-			if (obj instanceof Ghost && location.distanceSq(pacman.agents.getObjectLocation(obj)) <= 0.2) // within 0.4 roughly
+			if (!(ghosts[i] instanceof Ghost)) continue;
+			Ghost m = (Ghost) ghosts[i];
+			if (location.distanceSq(m.location) <= 0.2) // within 0.4 roughly.  We gotta be right on top anyway
 			{
-				Ghost m = (Ghost)obj;
 				if (m.frightened > 0)  // yum
 				{
 					pacman.score += eatGhostScore;
+					ghostEaten(m, eatGhostScore);
 					eatGhostScore *= 2;  // each Ghost is 2x more
+					if (pacman.ghosts.length > 4 && eatGhostScore > MAX_EAT_GHOST_SCORE)
+						eatGhostScore = MAX_EAT_GHOST_SCORE;
 					m.putInJail();
 				}
 				else // ouch
 				{
-					pacman.schedule.scheduleOnceIn(0.5, new Steppable()             // so it happens next.  Should be after resetLEvel(), so we do 0.5 rather than 0.25
+					pacman.scheduleEventIn(0.5, new PacMan.Event()             // so it happens next.  Should be after resetLEvel(), so we do 0.5 rather than 0.25
 							{
-						public void step(SimState state)
+						protected void perform(PacMan state)
 						{ 
 							die();
 							//Protocol of Pacs deaths, Steps and Score.
-							System.out.println("Anzahl Tode: " + pacman.deaths +  " | Gesammelte Punkte: " + pacman.score 
-									+ " | Anzahl Steps: " + pacman.countedSteps);
+							if (pacman.verbose)
+								System.out.println("Anzahl Tode: " + pacman.deaths +  " | Gesammelte Punkte: " + pacman.score 
+										+ " | Anzahl Steps: " + pacman.countedSteps);
 						}
 							});  // the ghosts move a bit more
 				}
 			}
 		}
+
+		if (event.shouldCommit())
+		{
+			event.agent = getClass().getSimpleName();
+			event.tag = tag;
+			event.rollout = pacman.isLookahead();
+			event.commit();
+		}
+	}
+
+	/** Emits a DotEaten event, if they're being recorded. */
+	void dotEaten(int x, int y, boolean energizer)
+	{
+		GameEvents.DotEaten event = new GameEvents.DotEaten();
+		if (event.isEnabled())
+		{
+			event.tag = tag;
+			event.x = x;
+			event.y = y;
+			event.energizer = energizer;
+			event.score = pacman.score;
+			event.rollout = pacman.isLookahead();
+			event.commit();
+		}
+	}
+
+	/** Emits a GhostEaten event, if they're being recorded. */
+	void ghostEaten(Ghost ghost, int points)
+	{
+		GameEvents.GhostEaten event = new GameEvents.GhostEaten();
+		if (event.isEnabled())
+		{
+			event.tag = tag;
+			event.ghost = ghost.getClass().getSimpleName();
+			event.points = points;
+			event.score = pacman.score;
+			event.rollout = pacman.isLookahead();
+			event.commit();
+		}
 	}
 
 
+	/** Returns how many steps from now a pause or a spin which is at count of total steps goes on: 1, or if the
+	 * game isn't animated (PacMan.animate), all the rest of them, so that it's over in one go.  It still ends on the
+	 * same step, alongside whatever else was to happen then. */
+	int animationSkip(int count, int total) {
+		return pacman.animate ? 1 : total - count;
+	}
+
 	/** Resets the level as a result of eating all the dots.  To do this we first clear out the entire
         schedule; this will eliminate everything because resetLevel() was itself scheduled at a half-time
         timestep so it's the only thing going on right now.  Clever right?  I know!  So awesome.  Anyway,
@@ -441,23 +466,27 @@ public class Pac extends Agent implements Steppable
 	public void resetLevel()
 	{
 		// clear out the schedule, we're done
-		pacman.schedule.clear();
+		pacman.clearSchedule();
 
 		// do a little pause
-		pacman.schedule.scheduleOnce(
-				new Steppable()
+		pacman.scheduleEventIn(1,
+				new PacMan.Event()
 				{
 					public int count = 0;
-					public void step(SimState state) 
+					protected void perform(PacMan state) 
 					{ 
-						if (++count < WAIT_TIME * 2) pacman.schedule.scheduleOnce(this); 
+						if (++count < WAIT_TIME * 2) {
+							int skip = animationSkip(count, WAIT_TIME * 2);
+							count += skip - 1;
+							pacman.scheduleEventIn(skip, this); 
+						}
 					} 
 				});
 
-		pacman.schedule.scheduleOnceIn(WAIT_TIME * 2,
-				new Steppable()
+		pacman.scheduleEventIn(WAIT_TIME * 2,
+				new PacMan.Event()
 		{
-			public void step(SimState state) { pacman.level++; pacman.resetGame(); }
+			protected void perform(PacMan state) { pacman.level++; pacman.resetGame(); }
 		});
 	}
 
@@ -475,12 +504,25 @@ public class Pac extends Agent implements Steppable
 	public void die()
 	{
 		pacman.deaths++;
+		if (pacman.stats != null) pacman.stats.record(StatsSink.DEATH, pacman);
+		GameEvents.PacDeath event = new GameEvents.PacDeath();
+		if (event.isEnabled())
+		{
+			event.tag = tag;
+			event.deaths = pacman.deaths;
+			event.level = pacman.level;
+			event.score = pacman.score;
+			event.steps = pacman.countedSteps;
+			event.rollout = pacman.isLookahead();
+			event.commit();
+		}
 		if (pacman.pacsLeft() > 1)
 		{
 			// there are other pacs playing.  We just delete ourselves.
 			if (stopper != null) stopper.stop();
 			stopper = null;
 			pacman.agents.remove(this);
+			pacman.occupancy.remove(slot);
 			pacman.pacs[tag] = null;
 			return;
 		}
@@ -488,24 +530,28 @@ public class Pac extends Agent implements Steppable
 		// okay so we're the last pac alive.  Let's do the little dance
 
 		// clear out the schedule, we're done
-		pacman.schedule.clear();
+		pacman.clearSchedule();
 
 		// do a little pause
-		pacman.schedule.scheduleOnce(
-				new Steppable()
+		pacman.scheduleEventIn(1,
+				new PacMan.Event()
 				{
 					public int count = 0;
-					public void step(SimState state) 
+					protected void perform(PacMan state) 
 					{ 
-						if (++count < WAIT_TIME) pacman.schedule.scheduleOnce(this); 
+						if (++count < WAIT_TIME) {
+							int skip = animationSkip(count, WAIT_TIME);
+							count += skip - 1;
+							pacman.scheduleEventIn(skip, this); 
+						}
 					} 
 				});
 
 		// wait a little more.
-		pacman.schedule.scheduleOnceIn(WAIT_TIME,
-				new Steppable()
+		pacman.scheduleEventIn(WAIT_TIME,
+				new PacMan.Event()
 		{
-			public void step(SimState state)
+			protected void perform(PacMan state)
 			{
 				// remove the Ghosts
 				Bag b = pacman.agents.getAllObjects();
@@ -514,22 +560,28 @@ public class Pac extends Agent implements Steppable
 		});
 
 		// do a little spin
-		pacman.schedule.scheduleOnceIn(WAIT_TIME + 1,
-				new Steppable() 
+		pacman.scheduleEventIn(WAIT_TIME + 1,
+				new PacMan.Event() 
 		{ 
 			public int count = 0;
-			public void step(SimState state) 
+			protected void perform(PacMan state) 
 			{ 
 				if (count % SPIN_SPEED == 0) { lastAction = (lastAction + 1) % 4; }  // spin around
-				if (++count < SPIN_TIME) pacman.schedule.scheduleOnce(this); 
+				if (++count < SPIN_TIME) {
+					int skip = animationSkip(count, SPIN_TIME);
+					for (int i = 1; i < skip; i++, count++) {		// all the spinning we skip over
+						if (count % SPIN_SPEED == 0) { lastAction = (lastAction + 1) % 4; }
+					}
+					pacman.scheduleEventIn(skip, this); 
+				}
 			} 
 		});
 
 		// wait a little more, then reset the agents.
-		pacman.schedule.scheduleOnceIn(WAIT_TIME * 2 + SPIN_TIME,
-				new Steppable()
+		pacman.scheduleEventIn(WAIT_TIME * 2 + SPIN_TIME,
+				new PacMan.Event()
 		{
-			public void step(SimState state) { pacman.saveEnvironment(sensor.sensEnv); pacman.resetAgents();}
+			protected void perform(PacMan state) { pacman.saveEnvironment(sensor.sensEnv); pacman.resetAgents();}
 		});
 	}
 }
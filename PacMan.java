@@ -6,13 +6,14 @@
 
 package sim.app.pacman;
 import sim.engine.*;
+import ec.util.*;
 import sim.util.*;
 import sim.field.continuous.*;
 import sim.field.grid.*;
 import java.io.*;
 
 /** PacMan is the model for the game.  The model contains three fields: a Continuous2D for the
-    agents, a Continuous2D for the dots, and an IntGrid2D holding the maze (1 is wall, 0 is open space).
+    agents, a DotField for the dots, and an IntGrid2D holding the maze (1 is wall, 0 is open space).
     The model holds an array of "actions", one per player, in case we want to make this a multiplayer game.
         
     <p>Note that you can easily modify this code to have different kinds of Pacs (internally we have invented
@@ -24,17 +25,23 @@ public class PacMan extends SimState
     {
     private static final long serialVersionUID = 1;
 
-    /** Holds the saved environment for Pac when he dies. */
-    public int[][] sensEnv = new int [28] [35];
+    /** Holds the saved environment for Pac when he dies.  It's made as big as the maze in start(). */
+    public ExplorationMap sensEnv = new ExplorationMap(28, 35);
     
     /** Holds the ghosts and the Pac. */
     public Continuous2D agents;
         
+    /** Which grid location each agent is on.  Kept up to date along with agents. */
+    public Occupancy occupancy;
+        
     /** Holds Energizers and Dots. */
-    public Continuous2D dots;
+    public DotField dots;
         
     /** The maze proper. */
     public IntGrid2D maze;
+
+    /** The compiled form of the maze, which the agents use to find out where they can go. */
+    public MazeGraph graph;
         
     /** A signal to indicate to the ghosts that they should become frightened next step around. */
     boolean frightenGhosts;  // signal for the ghosts
@@ -55,13 +62,212 @@ public class PacMan extends SimState
     
     public int levelsWon = 0;
 
+    /** After this many won levels the schedule is emptied, which ends the run.  0 or less means play forever. */
+    public int maxLevelsWon = 500;
+
+    /** Whether deaths and won levels are logged to the console.  Batch runs turn this off. */
+    public boolean verbose = true;
+
+    /** If false, the pauses after a death or a won level and the dying Pac's spin jump straight to their end rather
+        than taking a schedule step for every step of time they last.  The game goes on at the same time and exactly
+        as it would have, but in a couple of schedule steps rather than hundreds.  Batch runs and searches, which
+        nobody watches, turn this off. */
+    public boolean animate = true;
+
+    /** If not null, every death and won level is recorded here.  A sink may be shared by many games. */
+    public StatsSink stats = null;
+
+    /** If not null, a FrameSnapshot of the game is published here after a step whenever the last one has been
+        looked at, for drawing it on another thread.  See PacManViewer. */
+    public FrameExchanger frames = null;
+
+    /** The number of Pacs.  The game is meant for 1 or 2, but any number can play.  Set it before start(). */
+    public int numPacs = 1;
+
+    /** The number of ghosts.  Past the first four, there are more Blinkys, Pinkys, Inkys and Clydes, in that
+        order, each Inky going by the Blinky before it.  Set it before start(). */
+    public int numGhosts = 4;
+
+    /** If true, the ghosts step in a fixed order, Blinky, Pinky, Inky, then Clyde, rather than shuffled.  The order
+        matters: Inky aims by where Blinky is, and frightened ghosts use the random number generator.  PacManVecEnv
+        plays the game this way.  Set it before start(). */
+    public boolean fixedGhostOrder = false;
+
+    /** If true, a Pac with nothing to eat right around him heads for the nearest dot, energizer, or unexplored
+        location, as the planner finds it.  If false, he only looks along his row and column for an unexplored
+        location, as Pacs used to.  See FrontierPlanner. */
+    public boolean frontierPlanning = true;
+
+    /** If more than 0, the game is played on mazes of mazeWidth by mazeHeight made by MazeGenerator, rather than on
+        the classic ones.  mazeWidth must be even.  Set it before start(). */
+    public int mazeWidth = 0;
+    public int mazeHeight = 0;
+
+    /** The seed of the generated mazes: the maze with index i is made from mazeSeed + i. */
+    public long mazeSeed = 0;
+
+    /** Where the Pacs' nearest goals are.  Made when first asked for, and again when the maze changes. */
+    FrontierPlanner planner;
+
+    /** The random number generator of the Pacs' policy.  It's kept apart from random, so that the game only depends
+        on the seed and the decisions the Pacs make, not on how they made them.  That's what makes replays work. */
+    public MersenneTwisterFast policyRandom;
+
+    /** If not null, the Pacs' decisions and the results of every level won are recorded into it.  See Replay. */
+    public Replay recording;
+
+    /** If not null, the game is a replay: the Pacs are ReplayPacs taking their decisions from it, and the results
+        of every level won are checked against it.  See Replay. */
+    public Replay playback;
+
     /** The pacs.  Used by the ghosts to figure out where the closest Pac is. */
     public Pac[] pacs;      
 
+    /** The ghosts.  Used by the Pacs to find out if they've run into one. */
+    public Ghost[] ghosts;
+
+    /** The one-shot events presently on the schedule, in the order they were scheduled.  See Event. */
+    java.util.ArrayList<Event> pending = new java.util.ArrayList<Event>();
+
+    /** Whether the Pacs and Ghosts are on the schedule.  They're not while the Pac is dying or the level is changing. */
+    boolean agentsScheduled;
+
+    /** The time at which the Pacs and Ghosts were put on the schedule.  They step at this time plus 1, 2, 3, ... */
+    double agentsScheduledAt;
+
+    /** Returns the planner for the present maze. */
+    public FrontierPlanner getPlanner()
+        {
+        if (planner == null || planner.getGraph() != graph)
+            planner = new FrontierPlanner(graph);
+        return planner;
+        }
+
     /** Creates a PacMan simulation with the given random number seed. */
     public PacMan(long seed)
         {
         super(seed);
+        schedule = new GameSchedule();
+        }
+
+    /** A Schedule whose time can be set, so that restore(...) can put it back to where a snapshot was taken. */
+    static class GameSchedule extends Schedule
+        {
+        private static final long serialVersionUID = 1;
+
+        void setTime(double time, long steps)
+            {
+            this.time = time;
+            this.steps = steps;
+            }
+
+        /** Steps the schedule, then publishes a FrameSnapshot of the game if it has a FrameExchanger which wants
+            one, or the game is over. */
+        public boolean step(SimState state)
+            {
+            boolean result = super.step(state);
+            PacMan pacman = (PacMan) state;
+            if (pacman.frames != null && (!result || pacman.frames.isWanted()))
+                pacman.frames.publish(new FrameSnapshot(pacman));
+            return result;
+            }
+        }
+
+    /** A one-shot event of the game: the ghosts calming down, a won level, a death and the little dance
+        afterwards.  Events are scheduled with scheduleEvent(...) rather than directly on the schedule, so
+        the model knows which of them are pending and a snapshot can copy them.  Any state an event keeps
+        (such as a counter) must be in its own fields, which are copied with clone(). */
+    public static abstract class Event implements Steppable, Cloneable
+        {
+        private static final long serialVersionUID = 1;
+
+        double time;
+        int ordering;
+
+        public final void step(SimState state)
+            {
+            PacMan pacman = (PacMan) state;
+            pacman.pending.remove(this);
+            perform(pacman);
+            }
+
+        /** Does whatever the event does. */
+        protected abstract void perform(PacMan pacman);
+
+        Event copy()
+            {
+            try { return (Event)(clone()); }
+            catch (CloneNotSupportedException e) { throw new RuntimeException(e); }  // never happens
+            }
+        }
+
+    /** Schedules the event once at the given time and ordering. */
+    public void scheduleEvent(double time, int ordering, Event event)
+        {
+        event.time = time;
+        event.ordering = ordering;
+        pending.add(event);
+        schedule.scheduleOnce(time, ordering, event);
+        }
+
+    /** Schedules the event once at the given delta from now, at ordering 0. */
+    public void scheduleEventIn(double delta, Event event)
+        {
+        scheduleEvent(schedule.getTime() + delta, 0, event);
+        }
+
+    /** Removes everything from the schedule: the agents as well as the pending events. */
+    public void clearSchedule()
+        {
+        schedule.clear();
+        pending.clear();
+        agentsScheduled = false;
+        }
+
+    /** Puts the schedule back together from scratch at the given time: first the Pacs, then the Ghosts, then the
+        pending events.  MASON shuffles events with the same time and ordering, such as the four Ghosts, starting
+        from an order that depends on the schedule's history, so we always build it the same way. */
+    void rebuildSchedule(double time, long steps)
+        {
+        schedule.reset();
+        ((GameSchedule) schedule).setTime(time, steps);
+        if (closestPacs != null) java.util.Arrays.fill(closestPacs, null);  // the Pacs may have been replaced
+        if (agentsScheduled)
+            {
+            double next = agentsScheduledAt + Math.floor(time - agentsScheduledAt) + 1;
+            for(int i = pacs.length - 1; i >= 0; i--)
+                if (pacs[i] != null) pacs[i].stopper = schedule.scheduleRepeating(next, 0, pacs[i], 1);
+            for(int i = 0; i < ghosts.length; i++)
+                schedule.scheduleRepeating(next, fixedGhostOrder ? 1 + i : 1, ghosts[i], 1);
+            }
+        for(int i = 0; i < pending.size(); i++)
+            {
+            Event event = pending.get(i);
+            schedule.scheduleOnce(event.time, event.ordering, event);
+            }
+        }
+
+    /** Returns a snapshot of the whole game, which restore(...) can later put back.  Call this between steps.
+        This rebuilds the schedule the same way restore(...) does, so the game goes on exactly as a copy
+        restored from the snapshot would. */
+    public Snapshot snapshot()
+        {
+        return snapshot(new Snapshot());
+        }
+
+    /** Like snapshot(), but reuses the given snapshot's memory, which is faster if you take a lot of them. */
+    public Snapshot snapshot(Snapshot snapshot)
+        {
+        snapshot.save(this);
+        rebuildSchedule(schedule.getTime(), schedule.getSteps());
+        return snapshot;
+        }
+
+    /** Puts the game back to where it was when the snapshot was taken.  The snapshot must have been taken from
+        this game (since its last start()), and can be restored as often as you like.  Call this between steps. */
+    public void restore(Snapshot snapshot)
+        {
+        snapshot.restore(this);
         }
     
     /** Resets the scores, loads the maze, creates the fields, adds the dots and energizers, and resets the Pac and Ghosts. */
@@ -72,15 +278,19 @@ public class PacMan extends SimState
         deaths = 0;
         level = 1;
         score = 0;
+        policyRandom = new MersenneTwisterFast(random.nextLong());
                 
         // String mazefile = PacMan.class.getResource("images/maze0.pbm").getPath();
         // maze = new IntPBMGrid2D(mazefile);
         maze = new IntGrid2D(0,0);
-        try { maze.setTo(TableLoader.loadPNMFile(PacMan.class.getResourceAsStream("images/maze0.pbm"))); }
-        catch (Exception e) { e.printStackTrace(); }
+        graph = getMazeGraph(0);
+        maze.setTo(graph.getField());
+        if (sensEnv.getWidth() != maze.getWidth() || sensEnv.getHeight() != maze.getHeight())
+            sensEnv = new ExplorationMap(maze.getWidth(), maze.getHeight());
         
         agents = new Continuous2D(1.0, maze.getWidth(), maze.getHeight());
-        dots = new Continuous2D(1.0, maze.getWidth(), maze.getHeight());
+        occupancy = new Occupancy(maze.getWidth(), maze.getHeight());
+        dots = new DotField(maze.getWidth(), maze.getHeight());
         
         resetGame();
         }
@@ -88,7 +298,7 @@ public class PacMan extends SimState
     public Continuous2D getAgents() {
 		return agents;
 	}
-  Continuous2D getDots() {
+  DotField getDots() {
 		return dots;
 	}
 
@@ -97,46 +307,121 @@ public class PacMan extends SimState
 	}
 
 	public int MAX_MAZES = 2;
+
+    /** Compiled mazes by file name.  They never change, so they're shared by all PacMan instances and each
+        maze file is read and compiled only once, no matter how many games are played. */
+    static final java.util.HashMap<String, MazeGraph> mazeGraphs = new java.util.HashMap<String, MazeGraph>();
+
+    /** Returns the file name, relative to this class, of the maze with the given index. */
+    public static String getMazeFile(int mazeIndex)
+        {
+        return "images/maze" + mazeIndex + ".pbm";
+        }
+
+    /** Returns the compiled maze with the given index: a classic maze, or a generated one if mazeWidth is set. */
+    public MazeGraph getMazeGraph(int mazeIndex)
+        {
+        if (mazeWidth > 0) return getGeneratedMazeGraph(mazeWidth, mazeHeight, mazeSeed + mazeIndex);
+        return getMazeGraph(getMazeFile(mazeIndex));
+        }
+
+    /** Returns a maze of the given size made by MazeGenerator from the given seed, generating it the first time. */
+    public static MazeGraph getGeneratedMazeGraph(int width, int height, long seed)
+        {
+        String name = "generated-" + width + "x" + height + "-" + seed;
+        synchronized(mazeGraphs)
+            {
+            MazeGraph graph = mazeGraphs.get(name);
+            if (graph == null)
+                {
+                graph = new MazeGenerator(width, height, seed).generate(name);
+                mazeGraphs.put(name, graph);
+                }
+            return graph;
+            }
+        }
+
+    /** Returns the compiled maze for the given maze file (relative to this class), loading and compiling it the first time. */
+    public static MazeGraph getMazeGraph(String mazefile)
+        {
+        synchronized(mazeGraphs)
+            {
+            MazeGraph graph = mazeGraphs.get(mazefile);
+            if (graph == null)
+                {
+                try { graph = new MazeGraph(mazefile, TableLoader.loadPNMFile(PacMan.class.getResourceAsStream(mazefile))); }
+                catch (Exception e) { throw new RuntimeException("Could not load the maze " + mazefile, e); }
+                mazeGraphs.put(mazefile, graph);
+                }
+            return graph;
+            }
+        }
+
+    /** The dots and energizers each maze starts out with, built the first time the maze comes up. */
+    DotField[] dotTemplates = new DotField[MAX_MAZES];
         
     /** Resets the game board.  Doesn't change the score or deaths or level number */
     public void resetGame()
         {
     	// Reset Pac's sensor information
-    	for (int i = 0; i < sensEnv.length; i++) {
-    		for (int j = 0; j < sensEnv.length; j++) {
-    			sensEnv[i][j] = 0;
-    		}
-    	}
+    	sensEnv.clear();
     	
-        dots.clear();
-                
         //String mazefile = PacMan.class.getResource("images/maze" + (level - 1) % MAX_MAZES + ".pbm").getPath();
         //maze.read(mazefile);
         //maze.read(PacMan.class.getResourceAsStream("images/maze" + (level - 1) % MAX_MAZES + ".pbm"));
-        try { maze.setTo(TableLoader.loadPNMFile(PacMan.class.getResourceAsStream("images/maze" + (level - 1) % MAX_MAZES + ".pbm"))); }
-        catch (Exception e) { e.printStackTrace(); }
+        int mazeIndex = (level - 1) % MAX_MAZES;
+        graph = getMazeGraph(mazeIndex);
+        maze.setTo(graph.getField());
+
+        if (dotTemplates[mazeIndex] == null)
+            dotTemplates[mazeIndex] = createDots();
+        dots.setTo(dotTemplates[mazeIndex]);
+
+        resetAgents();
+        }
+        
+    /** Builds the dots and energizers for the current maze. */
+    DotField createDots()
+        {
+        DotField template = new DotField(maze.getWidth(), maze.getHeight());
 
         // add energizers
-        dots.setObjectLocation(new Energizer(), new Double2D(1, 5));
-        dots.setObjectLocation(new Energizer(), new Double2D(26, 5));
-        dots.setObjectLocation(new Energizer(), new Double2D(1, 25));
-        dots.setObjectLocation(new Energizer(), new Double2D(26, 25));
+        for(int i = 0; i < graph.getNumEnergizers(); i++)
+            template.addEnergizer(graph.getEnergizerX(i), graph.getEnergizerY(i));
 
         // distribute dots.  We allow dots right on the energizers, no biggie
         for (int x= 0; x < maze.getWidth(); x++)
             for(int y =0; y < maze.getHeight(); y++)
                 if (maze.field[x][y] == 0 && 
-                    !(y==16 && x>= 12 && x <= 16))  // not in the jail
-                    dots.setObjectLocation(new Dot(), new Double2D(x,y));
-
-        resetAgents();
+                    !graph.isInHouse(x, y))  // not in the jail
+                    template.addDot(x, y);
+        return template;
         }
         
     public int pacsLeft() { int count = 0; for(int i = 0; i < pacs.length;i++) if (pacs[i] != null) count++;  return count;}
         
+    /** How many times a Pac has moved.  A remembered closest Pac is only good as long as this doesn't change. */
+    long pacMoves;
+
+    /** For crowds of Pacs, per tile, the Pac last found closest to (closestPacX, closestPacY) in the tile, when
+        pacMoves was closestPacMoves. */
+    Pac[] closestPacs;
+    long[] closestPacMoves;
+    double[] closestPacX;
+    double[] closestPacY;
+
+    /** Returns the Pac closest to the given location; if several are equally close, one of them at random.  With
+        more than two Pacs we ask the occupancy index instead of looking at every Pac, and remember the answer: until
+        a Pac moves, another ghost at exactly the same location gets the same Pac.  Ghosts coming out of the house
+        often are. */
     public Pac pacClosestTo(MutableDouble2D location)
         {
         if (pacs.length == 1) return pacs[0];
+        if (pacs.length > 2)
+            {
+            Pac pac = crowdPacClosestTo(location);
+            if (pac != null) return pac;            // else they're all just off the maze, so look at every one
+            }
         Pac best = null;
         int count = 1;
         for(int i = 0; i < pacs.length; i++)
@@ -151,6 +436,35 @@ public class PacMan extends SimState
             }
         return best;
         }
+
+    Pac crowdPacClosestTo(MutableDouble2D location)
+        {
+        int x = (int) Math.floor(location.x);
+        int y = (int) Math.floor(location.y);
+        int width = occupancy.width;
+        if (x < 0 || y < 0 || x >= width || y >= occupancy.height)
+            return occupancy.getNearestPac(location.x, location.y, random);
+
+        int tile = x + y * width;
+        if (closestPacs == null || closestPacs.length != width * occupancy.height)
+            {
+            closestPacs = new Pac[width * occupancy.height];
+            closestPacMoves = new long[closestPacs.length];
+            closestPacX = new double[closestPacs.length];
+            closestPacY = new double[closestPacs.length];
+            }
+        Pac pac = closestPacs[tile];
+        if (pac == null || closestPacMoves[tile] != pacMoves || pacs[pac.tag] != pac ||
+            closestPacX[tile] != location.x || closestPacY[tile] != location.y)
+            {
+            pac = occupancy.getNearestPac(location.x, location.y, random);
+            closestPacs[tile] = pac;
+            closestPacMoves[tile] = pacMoves;
+            closestPacX[tile] = location.x;
+            closestPacY[tile] = location.y;
+            }
+        return pac;
+        }
         
     
     /**
@@ -158,12 +472,8 @@ public class PacMan extends SimState
      * 
      * @param env Pac's collected information until this point.
      */
-    public void saveEnvironment(int[][] env) {
-    	for (int i = 0; i < env.length; i++) {
-    		for (int j = 0; j < env.length; j++) {
-    			sensEnv[i][j] = env [i][j];
-    		}
-    	}
+    public void saveEnvironment(ExplorationMap env) {
+    	sensEnv.setTo(env);
     }
     
     
@@ -171,15 +481,17 @@ public class PacMan extends SimState
     public void resetAgents()
         {    	
         agents.clear();
-        schedule.clear();
+        occupancy.clear();
+        clearSchedule();
 
         // make arrays
-        actions = new int[] { Agent.NOTHING , Agent.NOTHING };
-        pacs = new Pac[1];  // set this to Pac[1] to make this one-player
+        pacs = new Pac[Math.max(1, numPacs)];  // set numPacs to 1 to make this one-player
+        actions = new int[Math.max(2, pacs.length)];
+        java.util.Arrays.fill(actions, Agent.NOTHING);
 
         // add the Pacs
-        if (pacs.length > 1) pacs[1] = new Pac(this,  1, sensEnv);  // schedule pac 1 first so he appears on the bottom initially
-        pacs[0] = new Pac(this,  0, sensEnv);
+        for(int i = pacs.length - 1; i >= 0; i--)
+            pacs[i] = createPac(i, sensEnv);  // schedule pac 0 last so he appears on top initially
 
         // add Blinky
         // yes, dead store
@@ -196,6 +508,28 @@ public class PacMan extends SimState
         // add Clyde
         // yes, dead store
         Clyde clyde = new Clyde(this);
+
+        ghosts = new Ghost[Math.max(4, numGhosts)];
+        ghosts[0] = blinky;
+        ghosts[1] = pinky;
+        ghosts[2] = inky;
+        ghosts[3] = clyde;
+
+        // add more of them for a crowd
+        for(int i = 4; i < ghosts.length; i++)
+            {
+            switch (i % 4)
+                {
+                case 0: ghosts[i] = blinky = new Blinky(this); break;
+                case 1: ghosts[i] = new Pinky(this); break;
+                case 2: ghosts[i] = new Inky(this, blinky); break;
+                default: ghosts[i] = new Clyde(this); break;
+                }
+            }
+        agentsScheduled = true;
+        agentsScheduledAt = schedule.getTime();
+        if (fixedGhostOrder)        // the agents scheduled themselves all at the same ordering
+            rebuildSchedule(schedule.getTime(), schedule.getSteps());
                 
         // ghosts are no longer frightened
         frightenGhosts = false;
@@ -203,6 +537,37 @@ public class PacMan extends SimState
         
         
         
+    /** Creates the Pac with the given tag, given his memory of the maze.  This is a ReplayPac if we're playing back
+        a Replay, else a regular Pac.  Override this to play with a different kind of Pac. */
+    protected Pac createPac(int tag, ExplorationMap env)
+        {
+        if (playback != null) return new ReplayPac(this, tag, env);
+        return new Pac(this, tag, env);
+        }
+
+    /** Called when a level has been won.  Records or checks a Replay checkpoint. */
+    void levelWon()
+        {
+        levelsWon++;
+        if (recording != null) recording.checkpoint(this);
+        if (playback != null) playback.verify(this);
+        if (stats != null) stats.record(StatsSink.LEVEL_WON, this);
+
+        GameEvents.LevelWon event = new GameEvents.LevelWon();
+        if (event.isEnabled())
+            {
+            event.level = level;
+            event.levelsWon = levelsWon;
+            event.score = score;
+            event.steps = countedSteps;
+            event.rollout = isLookahead();
+            event.commit();
+            }
+        }
+
+    /** Returns true if this game is only a lookahead, played by a search to try out a decision. */
+    boolean isLookahead() { return false; }
+
     /** Returns the desired user action.  */
     public int getNextAction(int tag) { return actions[tag]; }
 
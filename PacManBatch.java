@@ -0,0 +1,304 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import java.util.concurrent.*;
+import java.io.*;
+
+/** PacManBatch runs many independent PacMan games without a display, one game per random number seed.
+    The games are spread over a fork-join pool so that a batch scales with the number of cores: each
+    game owns its own PacMan instance and nothing is shared between them.
+
+    <p>A game runs until one of the stop conditions is met (levels won, deaths, or Pac steps).  A stop
+    condition of 0 or less is ignored, but at least one of them must be set.  The results are collected
+    into a Summary and returned rather than printed.  You can also run a batch from the command line:
+
+    <pre>java sim.app.pacman.PacManBatch -games 1000 -seed 1 -levels 10 -deaths 0 -steps 0 -threads 32 [-record dir] [-stats file] [-noplanning] [-maze 200x200] [-verbose]</pre>
+
+    <p>With -stats (or stats) every death and won level of every game goes to a StatsSink, which writes
+    the file as CSV, or in binary if its name ends in .pacs.
+
+    <p>With -record (or recordDirectory) every game is also recorded as a Replay, in the file game-SEED.pacr.
+    PacManReplay plays them back.
+*/
+
+public class PacManBatch
+    {
+    /** Stop a game after this many levels were won.  0 or less means no limit. */
+    public int maxLevels = 10;
+
+    /** Stop a game after this many deaths.  0 or less means no limit. */
+    public int maxDeaths = 0;
+
+    /** Stop a game after the Pacs have stepped this many times (PacMan.countedSteps).  0 or less means no limit. */
+    public long maxSteps = 0;
+
+    /** If not null, each game is recorded as a Replay into this directory.  See replayFile(...). */
+    public File recordDirectory = null;
+
+    /** If not null, every death and won level of every game is recorded here. */
+    public StatsSink stats = null;
+
+    /** Whether the Pacs plan their way to the nearest goal (PacMan.frontierPlanning).  -noplanning turns it off. */
+    public boolean frontierPlanning = true;
+
+    /** If more than 0, the games are played on generated mazes this big (PacMan.mazeWidth and mazeHeight), the
+        same ones in every game.  -maze 200x200 sets them. */
+    public int mazeWidth = 0;
+    public int mazeHeight = 0;
+
+    /** The number of worker threads. */
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    /** The outcome of a single game. */
+    public static class Result implements java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        public long seed;
+        public int levelsWon;
+        public int level;
+        public int deaths;
+        public int score;
+        public int countedSteps;
+        /** The number of schedule steps, including the pauses while dying or changing levels. */
+        public long scheduleSteps;
+        /** How long the game took to run, in nanoseconds. */
+        public long nanos;
+
+        public String toString()
+            {
+            return "seed " + seed + " | levels won " + levelsWon + " | deaths " + deaths + " | score " + score +
+                " | steps " + countedSteps;
+            }
+        }
+
+    /** The aggregated outcome of a batch of games.  The individual results are in the same order as the seeds. */
+    public static class Summary implements java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        public Result[] results;
+        public long levelsWon;
+        public long deaths;
+        public long score;
+        public long countedSteps;
+        public long scheduleSteps;
+        /** The wall-clock time of the whole batch, in nanoseconds. */
+        public long nanos;
+
+        Summary(Result[] results, long nanos)
+            {
+            this.results = results;
+            this.nanos = nanos;
+            for(int i = 0; i < results.length; i++)
+                {
+                levelsWon += results[i].levelsWon;
+                deaths += results[i].deaths;
+                score += results[i].score;
+                countedSteps += results[i].countedSteps;
+                scheduleSteps += results[i].scheduleSteps;
+                }
+            }
+
+        /** Returns the mean score per game. */
+        public double meanScore() { return results.length == 0 ? 0 : score / (double) results.length; }
+
+        /** Returns the mean number of Pac steps needed to win a level, or infinity if no level was won. */
+        public double stepsPerLevel() { return levelsWon == 0 ? Double.POSITIVE_INFINITY : countedSteps / (double) levelsWon; }
+
+        /** Returns the number of schedule steps per second of wall-clock time, summed over all threads. */
+        public double stepsPerSecond() { return nanos == 0 ? 0 : scheduleSteps / (nanos / 1.0e9); }
+
+        public String toString()
+            {
+            return "games " + results.length + " | levels won " + levelsWon + " | deaths " + deaths +
+                " | mean score " + meanScore() + " | steps per level " + stepsPerLevel() +
+                " | schedule steps/s " + (long) stepsPerSecond() + " | seconds " + (nanos / 1.0e9);
+            }
+        }
+
+    /** Creates the model for a game.  Override this to run variants of PacMan. */
+    protected PacMan createModel(long seed)
+        {
+        return new PacMan(seed);
+        }
+
+    /** Returns true if the given game has met one of the stop conditions. */
+    public boolean isDone(PacMan pacman)
+        {
+        return (maxLevels > 0 && pacman.levelsWon >= maxLevels) ||
+            (maxDeaths > 0 && pacman.deaths >= maxDeaths) ||
+            (maxSteps > 0 && pacman.countedSteps >= maxSteps);
+        }
+
+    /** Runs a single game to completion on the calling thread. */
+    public Result run(long seed)
+        {
+        if (maxLevels <= 0 && maxDeaths <= 0 && maxSteps <= 0)
+            throw new RuntimeException("At least one of maxLevels, maxDeaths or maxSteps must be set, else the game never ends.");
+
+        long time = System.nanoTime();
+        PacMan pacman = createModel(seed);
+        pacman.maxLevelsWon = 0;                // we decide when to stop, not the Pac
+        pacman.verbose = false;
+        pacman.animate = false;
+        pacman.stats = stats;
+        pacman.frontierPlanning = frontierPlanning;
+        pacman.mazeWidth = mazeWidth;
+        pacman.mazeHeight = mazeHeight;
+        if (recordDirectory != null) pacman.recording = new Replay(pacman);
+        pacman.start();
+
+        long steps = 0;
+        while(!isDone(pacman) && pacman.schedule.step(pacman))
+            steps++;
+        pacman.finish();
+
+        if (pacman.recording != null)
+            {
+            pacman.recording.finish(pacman, steps);
+            try { pacman.recording.write(replayFile(seed)); }
+            catch (IOException e) { throw new RuntimeException("Could not write the replay of game " + seed, e); }
+            }
+
+        Result result = new Result();
+        result.seed = seed;
+        result.levelsWon = pacman.levelsWon;
+        result.level = pacman.level;
+        result.deaths = pacman.deaths;
+        result.score = pacman.score;
+        result.countedSteps = pacman.countedSteps;
+        result.scheduleSteps = steps;
+        result.nanos = System.nanoTime() - time;
+        return result;
+        }
+
+    /** Returns the file the game with the given seed is recorded into. */
+    public File replayFile(long seed)
+        {
+        return new File(recordDirectory, "game-" + seed + ".pacr");
+        }
+
+    /** Runs one game per seed in parallel and returns the aggregated results. */
+    public Summary run(long[] seeds)
+        {
+        Result[] results = new Result[seeds.length];
+        long time = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+            {
+            pool.invoke(new Games(seeds, results, 0, seeds.length));
+            }
+        finally
+            {
+            pool.shutdown();
+            }
+        return new Summary(results, System.nanoTime() - time);
+        }
+
+    /** Runs numGames games with the consecutive seeds firstSeed, firstSeed + 1, ... in parallel. */
+    public Summary run(long firstSeed, int numGames)
+        {
+        long[] seeds = new long[numGames];
+        for(int i = 0; i < numGames; i++)
+            seeds[i] = firstSeed + i;
+        return run(seeds);
+        }
+
+    /** Splits the range of games in half until a single game is left, so idle workers can steal
+        the remaining games.  Games differ wildly in length, so we don't chunk them up front. */
+    class Games extends RecursiveAction
+        {
+        private static final long serialVersionUID = 1;
+
+        long[] seeds;
+        Result[] results;
+        int from;
+        int to;
+
+        Games(long[] seeds, Result[] results, int from, int to)
+            {
+            this.seeds = seeds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            }
+
+        protected void compute()
+            {
+            if (to - from == 1)
+                results[from] = run(seeds[from]);
+            else if (to - from > 1)
+                {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Games(seeds, results, from, mid), new Games(seeds, results, mid, to));
+                }
+            }
+        }
+
+    static String argumentForKey(String key, String[] args)
+        {
+        for(int i = 0; i < args.length - 1; i++)
+            if (args[i].equalsIgnoreCase(key))
+                return args[i + 1];
+        return null;
+        }
+
+    static long argumentForKey(String key, String[] args, long defaultValue)
+        {
+        String val = argumentForKey(key, args);
+        if (val == null) return defaultValue;
+        try { return Long.parseLong(val); }
+        catch (NumberFormatException e) { throw new RuntimeException("Invalid value for " + key + ": " + val); }
+        }
+
+    public static void main(String[] args)
+        {
+        PacManBatch batch = new PacManBatch();
+        batch.maxLevels = (int) argumentForKey("-levels", args, batch.maxLevels);
+        batch.maxDeaths = (int) argumentForKey("-deaths", args, batch.maxDeaths);
+        batch.maxSteps = argumentForKey("-steps", args, batch.maxSteps);
+        batch.threads = (int) argumentForKey("-threads", args, batch.threads);
+        String record = argumentForKey("-record", args);
+        if (record != null)
+            {
+            batch.recordDirectory = new File(record);
+            batch.recordDirectory.mkdirs();
+            }
+        String stats = argumentForKey("-stats", args);
+        if (stats != null)
+            {
+            try { batch.stats = new StatsSink(new File(stats)); }
+            catch (IOException e) { throw new RuntimeException("Could not open the stats file " + stats, e); }
+            }
+        for(int i = 0; i < args.length; i++)
+            if (args[i].equalsIgnoreCase("-noplanning"))
+                batch.frontierPlanning = false;
+        String maze = argumentForKey("-maze", args);
+        if (maze != null)
+            {
+            String[] size = maze.toLowerCase().split("x");
+            batch.mazeWidth = Integer.parseInt(size[0]);
+            batch.mazeHeight = Integer.parseInt(size[size.length - 1]);
+            }
+        long seed = argumentForKey("-seed", args, System.currentTimeMillis());
+        int games = (int) argumentForKey("-games", args, batch.threads);
+
+        Summary summary = batch.run(seed, games);
+        if (batch.stats != null)
+            {
+            try { batch.stats.close(); }
+            catch (IOException e) { throw new RuntimeException("Could not write the stats file " + stats, e); }
+            }
+        for(int i = 0; i < args.length; i++)
+            if (args[i].equalsIgnoreCase("-verbose"))
+                for(int j = 0; j < summary.results.length; j++)
+                    System.out.println(summary.results[j]);
+        System.out.println(summary);
+        System.exit(0);
+        }
+    }
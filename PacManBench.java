@@ -0,0 +1,348 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import java.lang.management.*;
+import java.util.*;
+
+/** PacManBench measures what the hot paths of the simulation cost: how long a call takes and how many bytes
+    it allocates.  Each benchmark is run on each combination of maze, number of Pacs, and ghost state:
+
+    <ul>
+    <li>The mazes are the shipped ones, images/maze0.pbm and images/maze1.pbm.
+    <li>The Pacs are 1 or 2 (PacMan.numPacs).
+    <li>The ghosts are normal, frightened, or jailed.
+    </ul>
+
+    <p>For each combination a game is played for a while, so the agents are spread out, then the ghosts are put into
+    the wanted state and a Snapshot is taken.  A benchmark calls its method in batches, and the game is restored
+    to the snapshot before every batch so that it stays in that state.  Only the batches are timed.  Allocation is
+    counted per thread, with the JVM's com.sun.management.ThreadMXBean, and the collections and collection time
+    during the measurement come from the GarbageCollectorMXBeans.  Those include what restoring allocates, so
+    they're only a rough guide.
+
+    <p>Every combination is warmed up first, for -warmup iterations, and then measured for -iterations iterations of
+    -time milliseconds each.  The time per call is the mean over the iterations, with its standard deviation.
+
+    <pre>java sim.app.pacman.PacManBench [-bench ghost.step,pac.step,...] [-mazes 0,1] [-pacs 1,2]
+    [-ghosts normal,frightened,jailed] [-warmup 3] [-iterations 5] [-time 500] [-seed 1]</pre>
+
+    <p>Run it with the same JVM flags every time (and nothing else running), or the numbers won't be comparable.
+*/
+
+public class PacManBench
+    {
+    /** The ghost states a benchmark can be run with. */
+    public static final String[] GHOST_STATES = { "normal", "frightened", "jailed" };
+
+    /** How many Pac steps the game is played before the snapshot is taken. */
+    public int playSteps = 150;
+
+    public int warmupIterations = 3;
+    public int iterations = 5;
+    /** How long an iteration takes, in milliseconds. */
+    public long iterationTime = 500;
+    public long seed = 1;
+
+    /** Keeps the results of the benchmarks alive, so the JIT can't throw the calls away. */
+    public static long sink;
+
+    /** A method to measure.  run(...) is called batch times in a row, on a game which was just restored. */
+    public static abstract class Benchmark
+        {
+        public final String name;
+        public final int batch;
+
+        public Benchmark(String name, int batch)
+            {
+            this.name = name;
+            this.batch = batch;
+            }
+
+        /** Does the i-th call of a batch. */
+        public abstract void run(PacMan pacman, int i);
+        }
+
+    /** Points the Pac's sensor at where he is, as Pac.doPolicyStep(...) does. */
+    static Sensor aim(Pac pac)
+        {
+        pac.sensor.setPositionPacX(pac.positionPacX);
+        pac.sensor.setPositionPacY(pac.positionPacY);
+        return pac.sensor;
+        }
+
+    /** The benchmarks, by name. */
+    public static final Benchmark[] BENCHMARKS =
+        {
+        new Benchmark("ghost.step", 256)
+            {
+            public void run(PacMan pacman, int i) { pacman.ghosts[i & 3].step(pacman); }
+            },
+        new Benchmark("pac.step", 64)
+            {
+            public void run(PacMan pacman, int i) { pacman.pacs[i % pacman.pacs.length].step(pacman); }
+            },
+        new Benchmark("pac.getToGo", 256)
+            {
+            public void run(PacMan pacman, int i)
+                {
+                Pac pac = pacman.pacs[i % pacman.pacs.length];
+                aim(pac);
+                sink += pac.getToGo();
+                }
+            },
+        new Benchmark("sensor.look", 256)     // the four directions at vision 1 and 2, as getToGo() looks
+            {
+            public void run(PacMan pacman, int i)
+                {
+                sink += aim(pacman.pacs[i % pacman.pacs.length]).look();
+                }
+            },
+        new Benchmark("sensor.getNorth...", 256)      // the same the old way, one direction and vision at a time
+            {
+            public void run(PacMan pacman, int i)
+                {
+                Sensor sensor = aim(pacman.pacs[i % pacman.pacs.length]);
+                double sum = sensor.getNorth(1) + sensor.getEast(1) + sensor.getSouth(1) + sensor.getWest(1) +
+                    sensor.getNorth(2) + sensor.getEast(2) + sensor.getSouth(2) + sensor.getWest(2);
+                sink += (long) sum;
+                }
+            },
+        new Benchmark("agent.isPossibleToDoAction", 256)      // all four actions of one agent
+            {
+            public void run(PacMan pacman, int i)
+                {
+                int n = pacman.pacs.length;
+                int k = i % (n + pacman.ghosts.length);
+                Agent agent = (k < n ? (Agent) pacman.pacs[k] : pacman.ghosts[k - n]);
+                for(int action = Agent.N; action <= Agent.W; action++)
+                    if (agent.isPossibleToDoAction(action)) sink++;
+                }
+            },
+        new Benchmark("game.resetGame", 4)
+            {
+            public void run(PacMan pacman, int i) { pacman.resetGame(); }
+            },
+        new Benchmark("game.tick", 64)        // a whole step of the schedule, the Pacs and the ghosts
+            {
+            public void run(PacMan pacman, int i) { pacman.schedule.step(pacman); }
+            },
+        };
+
+    /** Returns the benchmark with the given name, or null. */
+    public static Benchmark getBenchmark(String name)
+        {
+        for(int i = 0; i < BENCHMARKS.length; i++)
+            if (BENCHMARKS[i].name.equalsIgnoreCase(name))
+                return BENCHMARKS[i];
+        return null;
+        }
+
+    /** The measurement of one benchmark on one game. */
+    public static class Result
+        {
+        public String benchmark;
+        public int maze;
+        public int pacs;
+        public String ghosts;
+        /** The mean time per call over the iterations, and its standard deviation, in nanoseconds. */
+        public double nanosPerCall;
+        public double nanosDeviation;
+        /** The bytes allocated per call. */
+        public double bytesPerCall;
+        /** The collections, and the milliseconds they took, during the measurement. */
+        public long collections;
+        public long collectionMillis;
+
+        public String toString()
+            {
+            return String.format("%-28s maze %d | pacs %d | %-10s | %10.1f ns/call +- %6.1f | %9.1f B/call | gc %d (%d ms)",
+                benchmark, maze, pacs, ghosts, nanosPerCall, nanosDeviation, bytesPerCall, collections, collectionMillis);
+            }
+        }
+
+    /** Sets up a game on the given maze with the given number of Pacs and ghost state, and returns a snapshot of it. */
+    public Snapshot createGame(int maze, int pacs, String ghosts)
+        {
+        PacMan pacman = new PacMan(seed);
+        pacman.verbose = false;
+        pacman.maxLevelsWon = 0;
+        pacman.numPacs = pacs;
+        pacman.start();
+        if (maze != 0)
+            {
+            pacman.level = maze + 1;
+            pacman.resetGame();
+            }
+        while(pacman.countedSteps < playSteps * pacs && pacman.schedule.step(pacman)) { }
+
+        // let the death or the end of the level go by, if it's coming up
+        while(!pacman.pending.isEmpty() && pacman.pending.get(0).time < pacman.schedule.getTime() + 1 && pacman.schedule.step(pacman)) { }
+
+        for(int i = 0; i < pacman.ghosts.length; i++)
+            {
+            Ghost ghost = pacman.ghosts[i];
+            if (ghosts.equals("frightened"))
+                {
+                ghost.frightened = Ghost.FRIGHTENED_PERIOD;
+                ghost.waiting = 0;
+                }
+            else if (ghosts.equals("jailed")) ghost.putInJail();
+            else if (!ghosts.equals("normal")) throw new RuntimeException("Unknown ghost state " + ghosts);
+            }
+        return pacman.snapshot();
+        }
+
+    static long allocatedBytes()
+        {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+    static long collections()
+        {
+        long count = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+        }
+
+    static long collectionMillis()
+        {
+        long time = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0, gc.getCollectionTime());
+        return time;
+        }
+
+    /** Runs the benchmark for about the given number of milliseconds, and returns the nanoseconds per call.
+        The bytes allocated per call go into bytes[0]. */
+    double iterate(Benchmark benchmark, Snapshot snapshot, long millis, double[] bytes)
+        {
+        PacMan pacman = snapshot.pacman;
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;         // what asking costs, if anything
+
+        long nanos = 0;
+        long allocated = 0;
+        long calls = 0;
+        long end = System.nanoTime() + millis * 1000000L;
+        while(System.nanoTime() < end)
+            {
+            pacman.restore(snapshot);
+            long a = allocatedBytes();
+            long t = System.nanoTime();
+            for(int i = 0; i < benchmark.batch; i++)
+                benchmark.run(pacman, i);
+            nanos += System.nanoTime() - t;
+            allocated += allocatedBytes() - a - overhead;
+            calls += benchmark.batch;
+            }
+        bytes[0] = allocated / (double) calls;
+        return nanos / (double) calls;
+        }
+
+    /** Warms up and measures the benchmark on the given game. */
+    public Result measure(Benchmark benchmark, int maze, int pacs, String ghosts)
+        {
+        Snapshot snapshot = createGame(maze, pacs, ghosts);
+        double[] bytes = new double[1];
+        for(int i = 0; i < warmupIterations; i++)
+            iterate(benchmark, snapshot, iterationTime, bytes);
+
+        long collections = collections();
+        long collectionMillis = collectionMillis();
+        double sum = 0;
+        double sumSquared = 0;
+        double sumBytes = 0;
+        for(int i = 0; i < iterations; i++)
+            {
+            double nanos = iterate(benchmark, snapshot, iterationTime, bytes);
+            sum += nanos;
+            sumSquared += nanos * nanos;
+            sumBytes += bytes[0];
+            }
+
+        Result result = new Result();
+        result.benchmark = benchmark.name;
+        result.maze = maze;
+        result.pacs = pacs;
+        result.ghosts = ghosts;
+        result.nanosPerCall = sum / iterations;
+        result.nanosDeviation = Math.sqrt(Math.max(0, sumSquared / iterations - result.nanosPerCall * result.nanosPerCall));
+        result.bytesPerCall = sumBytes / iterations;
+        result.collections = collections() - collections;
+        result.collectionMillis = collectionMillis() - collectionMillis;
+        return result;
+        }
+
+    /** Measures every combination of the given benchmarks, mazes, numbers of Pacs and ghost states, printing each result as it comes. */
+    public List<Result> run(Benchmark[] benchmarks, int[] mazes, int[] pacs, String[] ghosts)
+        {
+        ArrayList<Result> results = new ArrayList<Result>();
+        for(int b = 0; b < benchmarks.length; b++)
+            for(int m = 0; m < mazes.length; m++)
+                for(int p = 0; p < pacs.length; p++)
+                    for(int g = 0; g < ghosts.length; g++)
+                        {
+                        Result result = measure(benchmarks[b], mazes[m], pacs[p], ghosts[g]);
+                        System.out.println(result);
+                        results.add(result);
+                        }
+        return results;
+        }
+
+    static String[] listForKey(String key, String[] args, String[] defaultValue)
+        {
+        String val = PacManBatch.argumentForKey(key, args);
+        return val == null ? defaultValue : val.split(",");
+        }
+
+    static int[] toInts(String key, String[] vals)
+        {
+        int[] ints = new int[vals.length];
+        try
+            {
+            for(int i = 0; i < vals.length; i++)
+                ints[i] = Integer.parseInt(vals[i].trim());
+            }
+        catch (NumberFormatException e) { throw new RuntimeException("Invalid value for " + key + ": " + Arrays.toString(vals)); }
+        return ints;
+        }
+
+    public static void main(String[] args)
+        {
+        PacManBench bench = new PacManBench();
+        bench.warmupIterations = (int) PacManBatch.argumentForKey("-warmup", args, bench.warmupIterations);
+        bench.iterations = (int) PacManBatch.argumentForKey("-iterations", args, bench.iterations);
+        bench.iterationTime = PacManBatch.argumentForKey("-time", args, bench.iterationTime);
+        bench.seed = PacManBatch.argumentForKey("-seed", args, bench.seed);
+
+        String[] names = listForKey("-bench", args, null);
+        Benchmark[] benchmarks = BENCHMARKS;
+        if (names != null)
+            {
+            benchmarks = new Benchmark[names.length];
+            for(int i = 0; i < names.length; i++)
+                if ((benchmarks[i] = getBenchmark(names[i].trim())) == null)
+                    throw new RuntimeException("Unknown benchmark " + names[i]);
+            }
+        int[] mazes = toInts("-mazes", listForKey("-mazes", args, new String[] { "0", "1" }));
+        for(int i = 0; i < mazes.length; i++)
+            if (mazes[i] < 0 || mazes[i] >= 2)
+                throw new RuntimeException("There is no maze " + mazes[i]);
+        int[] pacs = toInts("-pacs", listForKey("-pacs", args, new String[] { "1", "2" }));
+        for(int i = 0; i < pacs.length; i++)
+            if (pacs[i] != 1 && pacs[i] != 2)
+                throw new RuntimeException("There can be 1 or 2 Pacs, not " + pacs[i]);
+        String[] ghosts = listForKey("-ghosts", args, GHOST_STATES);
+
+        System.out.println(System.getProperty("java.vm.name") + " " + System.getProperty("java.version") +
+            " | warmup " + bench.warmupIterations + " x " + bench.iterationTime + " ms | iterations " + bench.iterations +
+            " x " + bench.iterationTime + " ms | seed " + bench.seed);
+        bench.run(benchmarks, mazes, pacs, ghosts);
+        System.exit(0);
+        }
+    }
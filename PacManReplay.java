@@ -0,0 +1,130 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** PacManReplay plays recorded games (see Replay) back without a display, as fast as it can, and checks
+    that every level comes out with the recorded levels won, score, deaths, and countedSteps.  The Pac's
+    policy isn't run at all: the Pacs are ReplayPacs.  Like PacManBatch the replays are spread over a
+    fork-join pool.  From the command line, give it replay files or directories full of them:
+
+    <pre>java sim.app.pacman.PacManReplay [-threads 32] [-verbose] replays/ game-17.pacr ...</pre>
+*/
+
+public class PacManReplay
+    {
+    /** The number of worker threads. */
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Plays the replay back on the calling thread.  Returns null if it matched the recording, else what went wrong. */
+    public String play(Replay replay)
+        {
+        PacMan pacman = replay.createModel();
+        pacman.start();
+        long steps = 0;
+        while(steps < replay.getSteps() && pacman.schedule.step(pacman))
+            steps++;
+        pacman.finish();
+        if (steps < replay.getSteps())
+            return "the game ended after " + steps + " of the " + replay.getSteps() + " recorded steps";
+        replay.verifyEnd(pacman);
+        return replay.getMismatch();
+        }
+
+    /** Reads the replay from the given file and plays it back.  Returns null if it matched the recording, else what went wrong. */
+    public String play(File file)
+        {
+        try { return play(Replay.read(file)); }
+        catch (IOException e) { return "could not be read: " + e; }
+        }
+
+    /** Plays the replays in the given files in parallel.  Returns, for each file, null if it matched the recording,
+        else what went wrong. */
+    public String[] play(File[] files)
+        {
+        String[] results = new String[files.length];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+            {
+            pool.invoke(new Replays(files, results, 0, files.length));
+            }
+        finally
+            {
+            pool.shutdown();
+            }
+        return results;
+        }
+
+    /** Splits the range of replays in half until a single one is left, like PacManBatch.Games. */
+    class Replays extends RecursiveAction
+        {
+        private static final long serialVersionUID = 1;
+
+        File[] files;
+        String[] results;
+        int from;
+        int to;
+
+        Replays(File[] files, String[] results, int from, int to)
+            {
+            this.files = files;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            }
+
+        protected void compute()
+            {
+            if (to - from == 1)
+                results[from] = play(files[from]);
+            else if (to - from > 1)
+                {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Replays(files, results, from, mid), new Replays(files, results, mid, to));
+                }
+            }
+        }
+
+    public static void main(String[] args)
+        {
+        PacManReplay replayer = new PacManReplay();
+        boolean verbose = false;
+        ArrayList<File> files = new ArrayList<File>();
+        for(int i = 0; i < args.length; i++)
+            {
+            if (args[i].equalsIgnoreCase("-threads")) replayer.threads = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-verbose")) verbose = true;
+            else
+                {
+                File file = new File(args[i]);
+                File[] contents = file.listFiles();
+                if (contents == null) files.add(file);
+                else
+                    {
+                    Arrays.sort(contents);
+                    for(int j = 0; j < contents.length; j++)
+                        if (contents[j].getName().endsWith(".pacr")) files.add(contents[j]);
+                    }
+                }
+            }
+
+        long time = System.nanoTime();
+        File[] f = files.toArray(new File[files.size()]);
+        String[] results = replayer.play(f);
+        int failed = 0;
+        for(int i = 0; i < f.length; i++)
+            {
+            if (results[i] != null) { failed++; System.out.println(f[i] + ": " + results[i]); }
+            else if (verbose) System.out.println(f[i] + ": ok");
+            }
+        System.out.println("replays " + f.length + " | matched " + (f.length - failed) + " | failed " + failed +
+            " | seconds " + ((System.nanoTime() - time) / 1.0e9));
+        System.exit(failed == 0 ? 0 : 1);
+        }
+    }
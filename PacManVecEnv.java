@@ -0,0 +1,811 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import ec.util.*;
+import sim.field.continuous.*;
+import sim.util.*;
+import java.util.concurrent.*;
+
+/** PacManVecEnv plays many games of PacMan in lockstep, for reinforcement learning.  Rather than a SimState,
+    a Schedule, and an object per agent, the games are kept in flat arrays, one entry per game (or per game and
+    ghost, at game * NUM_GHOSTS + ghost): positions, headings, the ghosts' timers, the dots, and the scores.
+    reset(...) starts games and step(...) advances every game one tick with the Pac's action for that game,
+    and reports the reward (the points scored) and whether the game is done.  macroStep(...) instead holds the
+    action until the Pac comes to his next decision point, skipping over the ticks in between in which nothing
+    can happen.  Big batches are stepped in parallel on the common fork-join pool.
+
+    <p>An episode is a single life on the first level: it's done when the Pac dies (DIED) or eats all the dots
+    (WON).  Up to then a game goes tick for tick exactly like a PacMan with the same seed, fixedGhostOrder set,
+    and an ActionPac doing the same actions (see createReference(...)), with the same positions, timers,
+    random numbers, and score.  To keep it that way the code below follows Pac, Ghost, Blinky, Pinky, Inky and
+    Clyde line by line, down to the floating point they do between grid locations, and uses the same
+    Continuous2D arithmetic and DecisionTable.  If you change the rules there, change them here too.
+
+    <p>The state arrays are public so that observations can be read straight out of them, but don't write them.
+    Positions are in fixed point like Agent.fx and Agent.fy, Agent.UNITS per grid location.  The dots of game g
+    are bits (y * width + x) of dots[g * words ...], as in DotField.
+*/
+
+public class PacManVecEnv
+    {
+    /** Game status: still going. */
+    public static final int PLAYING = 0;
+    /** Game status: the Pac ran into a ghost which wasn't frightened. */
+    public static final int DIED = 1;
+    /** Game status: the Pac ate all the dots. */
+    public static final int WON = 2;
+
+    public static final int NUM_GHOSTS = 4;
+    /** The ghosts, in the order they step. */
+    public static final int BLINKY = 0, PINKY = 1, INKY = 2, CLYDE = 3;
+
+    /** How many games a task steps at least, when stepping in parallel. */
+    static final int GRAIN = 256;
+
+    public final int numGames;
+    public final MazeGraph graph;
+    public final int width;
+    public final int height;
+    /** The number of longs of dots (and of energizers) per game. */
+    public final int words;
+
+    // the Pac
+    public final int[] pacX;
+    public final int[] pacY;
+    /** The Pac's last action, or Agent.NOTHING. */
+    public final int[] pacHeading;
+    public final int[] eatGhostScore;
+
+    // the ghosts, NUM_GHOSTS per game
+    public final int[] ghostX;
+    public final int[] ghostY;
+    public final int[] ghostHeading;
+    public final int[] frightened;
+    public final int[] waiting;
+    public final boolean[] exiting;
+
+    // the games
+    /** Set for the tick in which the Pac ate an energizer, like PacMan.frightenGhosts. */
+    public final boolean[] frightenGhosts;
+    public final long[] dots;
+    public final long[] energizers;
+    public final int[] score;
+    /** How many ticks each game has been going, like PacMan.countedSteps. */
+    public final int[] steps;
+    public final int[] status;
+    final MersenneTwisterFast[] random;
+
+    /** The rewards and done flags of the last step(int[]). */
+    public final int[] rewards;
+    public final boolean[] done;
+
+    // the start of a game, and things the agents know, taken from a real game
+    final DecisionTable decisions;
+    /** Only used for its toroidal arithmetic, which the agents do with PacMan.agents. */
+    final Continuous2D field;
+    final int pacStartX, pacStartY, pacStartHeading;
+    final int[] ghostStartX = new int[NUM_GHOSTS];
+    final int[] ghostStartY = new int[NUM_GHOSTS];
+    final int[] ghostStartHeading = new int[NUM_GHOSTS];
+    final int[] ghostStartWaiting = new int[NUM_GHOSTS];
+    final int[] ghostStartFrightened = new int[NUM_GHOSTS];
+    final double exitX, exitY;
+    final int jailX, jailY;
+    final Double2D scatterTarget;
+    final long[] startDots;
+    final long[] startEnergizers;
+
+    /** Creates numGames games.  They're all DIED until you reset(...) them. */
+    public PacManVecEnv(int numGames)
+        {
+        this.numGames = numGames;
+
+        // a real game, just started, tells us where everything begins
+        PacMan template = createReference(0);
+        template.start();
+        graph = template.graph;
+        decisions = graph.getDecisions();
+        width = graph.getWidth();
+        height = graph.getHeight();
+        field = new Continuous2D(1.0, width, height);
+        Pac pac = template.pacs[0];
+        pacStartX = pac.fx;
+        pacStartY = pac.fy;
+        pacStartHeading = pac.lastAction;
+        for(int i = 0; i < NUM_GHOSTS; i++)
+            {
+            Ghost ghost = template.ghosts[i];
+            ghostStartX[i] = ghost.fx;
+            ghostStartY[i] = ghost.fy;
+            ghostStartHeading[i] = ghost.lastAction;
+            ghostStartWaiting[i] = ghost.waiting;
+            ghostStartFrightened[i] = ghost.frightened;
+            }
+        Ghost blinky = template.ghosts[BLINKY];
+        exitX = blinky.exitLocation.x;
+        exitY = blinky.exitLocation.y;
+        jailX = (int) Math.round(exitX * Agent.UNITS);
+        jailY = (int) Math.round(exitY * Agent.UNITS);
+        scatterTarget = ((Clyde) template.ghosts[CLYDE]).scatterTarget;
+        startDots = template.dots.dots.clone();
+        startEnergizers = template.dots.energizers.clone();
+        words = startDots.length;
+        template.finish();
+
+        pacX = new int[numGames];
+        pacY = new int[numGames];
+        pacHeading = new int[numGames];
+        eatGhostScore = new int[numGames];
+        ghostX = new int[numGames * NUM_GHOSTS];
+        ghostY = new int[numGames * NUM_GHOSTS];
+        ghostHeading = new int[numGames * NUM_GHOSTS];
+        frightened = new int[numGames * NUM_GHOSTS];
+        waiting = new int[numGames * NUM_GHOSTS];
+        exiting = new boolean[numGames * NUM_GHOSTS];
+        frightenGhosts = new boolean[numGames];
+        dots = new long[numGames * words];
+        energizers = new long[numGames * words];
+        score = new int[numGames];
+        steps = new int[numGames];
+        status = new int[numGames];
+        random = new MersenneTwisterFast[numGames];
+        rewards = new int[numGames];
+        done = new boolean[numGames];
+        java.util.Arrays.fill(status, DIED);
+        java.util.Arrays.fill(done, true);
+        }
+
+    /** Returns a PacMan which plays exactly like a game of the environment with the same seed, when its actions[0]
+        is set to the same actions.  You still have to start() it. */
+    public static PacMan createReference(long seed)
+        {
+        PacMan pacman = new PacMan(seed)
+            {
+            private static final long serialVersionUID = 1;
+            protected Pac createPac(int tag, ExplorationMap env) { return new ActionPac(this, tag, env); }
+            };
+        pacman.fixedGhostOrder = true;
+        pacman.verbose = false;
+        return pacman;
+        }
+
+    /** Starts every game again, game g with seeds[g]. */
+    public void reset(long[] seeds)
+        {
+        for(int g = 0; g < numGames; g++)
+            reset(g, seeds[g]);
+        }
+
+    /** Starts the given game again with the given seed. */
+    public void reset(int g, long seed)
+        {
+        pacX[g] = pacStartX;
+        pacY[g] = pacStartY;
+        pacHeading[g] = pacStartHeading;
+        eatGhostScore[g] = 200;
+        for(int i = 0; i < NUM_GHOSTS; i++)
+            {
+            int k = g * NUM_GHOSTS + i;
+            ghostX[k] = ghostStartX[i];
+            ghostY[k] = ghostStartY[i];
+            ghostHeading[k] = ghostStartHeading[i];
+            frightened[k] = ghostStartFrightened[i];
+            waiting[k] = ghostStartWaiting[i];
+            exiting[k] = false;
+            }
+        frightenGhosts[g] = false;
+        System.arraycopy(startDots, 0, dots, g * words, words);
+        System.arraycopy(startEnergizers, 0, energizers, g * words, words);
+        score[g] = 0;
+        steps[g] = 0;
+        status[g] = PLAYING;
+        rewards[g] = 0;
+        done[g] = false;
+
+        if (random[g] == null) random[g] = new MersenneTwisterFast(seed);
+        else random[g].setSeed(seed);
+        random[g].nextLong();           // PacMan.start() seeds policyRandom with it
+        }
+
+    /** Advances every game one tick, game g with the Pac's action actions[g] (N, E, S, W, or NOTHING to keep going),
+        and puts the results in rewards and done.  Games which are already done stay as they are, with reward 0. */
+    public void step(int[] actions)
+        {
+        step(actions, rewards, done);
+        }
+
+    /** Advances every game one tick, game g with the Pac's action actions[g], and puts the points each game scored
+        into rewards and whether it's done (DIED or WON) into done. */
+    public void step(int[] actions, int[] rewards, boolean[] done)
+        {
+        if (numGames < 2 * GRAIN) step(actions, rewards, done, 0, numGames);
+        else ForkJoinPool.commonPool().invoke(new Ticks(actions, rewards, done, 0, numGames));
+        }
+
+    /** Advances every game to the Pac's next decision point, game g with the Pac holding actions[g] all the way,
+        and puts the points each game scored into rewards, whether it's done into done, and how many ticks it went
+        into ticks.  A game goes at least one tick and at most maxTicks.  See macroStep(int, int, int). */
+    public void macroStep(int[] actions, int maxTicks, int[] rewards, boolean[] done, int[] ticks)
+        {
+        if (numGames < 2 * GRAIN) macroStep(actions, maxTicks, rewards, done, ticks, 0, numGames);
+        else ForkJoinPool.commonPool().invoke(new Ticks(actions, maxTicks, rewards, done, ticks, 0, numGames));
+        }
+
+    void step(int[] actions, int[] rewards, boolean[] done, int from, int to)
+        {
+        for(int g = from; g < to; g++)
+            {
+            int before = score[g];
+            if (status[g] == PLAYING) tick(g, actions[g]);
+            rewards[g] = score[g] - before;
+            done[g] = (status[g] != PLAYING);
+            }
+        }
+
+    void macroStep(int[] actions, int maxTicks, int[] rewards, boolean[] done, int[] ticks, int from, int to)
+        {
+        for(int g = from; g < to; g++)
+            {
+            int before = score[g];
+            ticks[g] = (status[g] == PLAYING ? macroStep(g, actions[g], maxTicks) : 0);
+            rewards[g] = score[g] - before;
+            done[g] = (status[g] != PLAYING);
+            }
+        }
+
+    /** Splits the range of games in half until they're small enough, like PacManBatch.Games. */
+    class Ticks extends RecursiveAction
+        {
+        private static final long serialVersionUID = 1;
+
+        int[] actions;
+        /** For macro steps, else 0 and null. */
+        int maxTicks;
+        int[] rewards;
+        boolean[] done;
+        int[] ticks;
+        int from;
+        int to;
+
+        Ticks(int[] actions, int[] rewards, boolean[] done, int from, int to)
+            {
+            this(actions, 0, rewards, done, null, from, to);
+            }
+
+        Ticks(int[] actions, int maxTicks, int[] rewards, boolean[] done, int[] ticks, int from, int to)
+            {
+            this.actions = actions;
+            this.maxTicks = maxTicks;
+            this.rewards = rewards;
+            this.done = done;
+            this.ticks = ticks;
+            this.from = from;
+            this.to = to;
+            }
+
+        protected void compute()
+            {
+            if (to - from <= GRAIN)
+                {
+                if (ticks == null) step(actions, rewards, done, from, to);
+                else macroStep(actions, maxTicks, rewards, done, ticks, from, to);
+                }
+            else
+                {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Ticks(actions, maxTicks, rewards, done, ticks, from, mid),
+                    new Ticks(actions, maxTicks, rewards, done, ticks, mid, to));
+                }
+            }
+        }
+
+    //// ONE TICK OF ONE GAME
+
+    /** Advances game g one tick: what happens at one time step of PacMan's schedule, and the events half a step later. */
+    void tick(int g, int action)
+        {
+        // the event the Pac scheduled when he ate an energizer goes first
+        frightenGhosts[g] = false;
+        steps[g]++;
+
+        // Pac.step(...), with ActionPac's policy
+        if (action < Agent.N || action > Agent.W) action = Agent.NOTHING;
+        if (pacCanDo(g, action)) move(pacX, pacY, pacHeading, g, Pac.PAC_DISCRETIZATION, action);
+        else if (pacCanDo(g, pacHeading[g])) move(pacX, pacY, pacHeading, g, Pac.PAC_DISCRETIZATION, pacHeading[g]);
+
+        boolean won = false;
+        boolean died = false;
+        if (pacX[g] % Agent.UNITS == 0 && pacY[g] % Agent.UNITS == 0)
+            {
+            int bit = (pacY[g] / Agent.UNITS) * width + pacX[g] / Agent.UNITS;
+            boolean ate = false;
+            if (eat(energizers, g, bit))
+                {
+                ate = true;
+                score[g] += 40;
+                eatGhostScore[g] = 200;
+                frightenGhosts[g] = true;
+                }
+            if (eat(dots, g, bit))
+                {
+                ate = true;
+                score[g] += 10;
+                }
+            if (ate && isEmpty(g)) won = true;
+            }
+
+        double px = pacX[g] / (double) Agent.UNITS;
+        double py = pacY[g] / (double) Agent.UNITS;
+        for(int i = 0; i < NUM_GHOSTS; i++)
+            {
+            int k = g * NUM_GHOSTS + i;
+            double dx = px - ghostX[k] / (double) Agent.UNITS;
+            double dy = py - ghostY[k] / (double) Agent.UNITS;
+            if (dx * dx + dy * dy <= 0.2)
+                {
+                if (frightened[k] > 0)
+                    {
+                    score[g] += eatGhostScore[g];
+                    eatGhostScore[g] *= 2;
+                    putInJail(k);
+                    }
+                else died = true;
+                }
+            }
+
+        // the ghosts
+        for(int i = 0; i < NUM_GHOSTS; i++)
+            ghostStep(g, i);
+
+        // the won level comes a quarter step later, before the death half a step later, and stops it
+        if (won) status[g] = WON;
+        else if (died) status[g] = DIED;
+        }
+
+    /** DotField.remove(...) for game g. */
+    boolean eat(long[] bits, int g, int bit)
+        {
+        int i = g * words + (bit >>> 6);
+        long mask = 1L << bit;
+        long word = bits[i];
+        bits[i] = word & ~mask;
+        return (word & mask) != 0;
+        }
+
+    /** DotField.isEmpty() for game g. */
+    boolean isEmpty(int g)
+        {
+        for(int i = g * words; i < (g + 1) * words; i++)
+            if ((dots[i] | energizers[i]) != 0) return false;
+        return true;
+        }
+
+    /** Agent.isPossibleToDoAction(...) for the Pac of game g. */
+    boolean pacCanDo(int g, int action)
+        {
+        if (action == Agent.NOTHING) return false;
+        int lastAction = pacHeading[g];
+        int x0 = pacX[g] / Agent.UNITS;
+        int y0 = pacY[g] / Agent.UNITS;
+        int x1 = (pacX[g] % Agent.UNITS == 0 ? x0 : x0 + 1);
+        int y1 = (pacY[g] % Agent.UNITS == 0 ? y0 : y0 + 1);
+        if ((x0 == x1 && y0 == y1) || lastAction == Agent.NOTHING)
+            return graph.canMove(x0, y0, action);
+        else if (action == lastAction)
+            {
+            switch (action)
+                {
+                case Agent.N: return graph.isOpen(x0, y0);
+                case Agent.E: return graph.isOpen(x1, y0);
+                case Agent.S: return graph.isOpen(x0, y1);
+                case Agent.W: return graph.isOpen(x0, y0);
+                }
+            }
+        return action == Ghost.reverseOf(lastAction);
+        }
+
+    /** Agent.performAction(...) for agent i of the given arrays, with the given discretization. */
+    void move(int[] xs, int[] ys, int[] headings, int i, int discretization, int action)
+        {
+        int step = Agent.UNITS / discretization;
+        int x = xs[i];
+        int y = ys[i];
+        if (x % step != 0 || y % step != 0)
+            {
+            // Agent.offGridAction(...)
+            double speed = 1.0 / discretization;
+            double dx = x / (double) Agent.UNITS;
+            double dy = y / (double) Agent.UNITS;
+            switch (action)
+                {
+                case Agent.N: dy = field.sty(dy - speed); break;
+                case Agent.E: dx = field.stx(dx + speed); break;
+                case Agent.S: dy = field.sty(dy + speed); break;
+                case Agent.W: dx = field.stx(dx - speed); break;
+                default: throw new RuntimeException("default case should never occur");
+                }
+            xs[i] = (int)(Math.round(dx * discretization)) * step;
+            ys[i] = (int)(Math.round(dy * discretization)) * step;
+            headings[i] = action;
+            return;
+            }
+
+        int w = width * Agent.UNITS;
+        int h = height * Agent.UNITS;
+        switch (action)
+            {
+            case Agent.N: y -= step; if (y < 0) y += h; break;
+            case Agent.E: x += step; if (x >= w) x -= w; break;
+            case Agent.S: y += step; if (y >= h) y -= h; break;
+            case Agent.W: x -= step; if (x < 0) x += w; break;
+            default: throw new RuntimeException("default case should never occur");
+            }
+        xs[i] = x;
+        ys[i] = y;
+        headings[i] = action;
+        }
+
+    /** Ghost.putInJail() for ghost k. */
+    void putInJail(int k)
+        {
+        ghostX[k] = jailX;
+        ghostY[k] = jailY;
+        ghostHeading[k] = Agent.W;
+        frightened[k] = 0;
+        waiting[k] = Ghost.WAITING_PERIOD;
+        }
+
+    /** Ghost.step(...) for ghost i of game g. */
+    void ghostStep(int g, int i)
+        {
+        int k = g * NUM_GHOSTS + i;
+        if (frightenGhosts[g] && waiting[k] <= 0 && !exiting[k])
+            {
+            ghostHeading[k] = Ghost.reverseOf(ghostHeading[k]);
+            frightened[k] = Ghost.FRIGHTENED_PERIOD;
+            }
+        int discretization = (frightened[k] > 0 ? Ghost.FRIGHTENED_DISCRETIZATION : Ghost.REGULAR_DISCRETIZATION);
+
+        double lx = ghostX[k] / (double) Agent.UNITS;
+        double ly = ghostY[k] / (double) Agent.UNITS;
+        if (waiting[k] <= 0 && lx == exitX && ly <= exitY && ly > exitY - 3)
+            {
+            exiting[k] = true;
+            double y = field.sty(ly - 1.0 / discretization);
+            if (y <= exitY - 3) y = exitY - 3;
+            int step = Agent.UNITS / discretization;
+            ghostX[k] = (int)(Math.round(lx * discretization)) * step;
+            ghostY[k] = (int)(Math.round(y * discretization)) * step;
+            ghostHeading[k] = random[g].nextBoolean() ? Agent.W : Agent.E;
+            return;
+            }
+
+        exiting[k] = false;
+        if (ghostX[k] % Agent.UNITS == 0 && ghostY[k] % Agent.UNITS == 0)
+            {
+            int x = ghostX[k] / Agent.UNITS;
+            int y = ghostY[k] / Agent.UNITS;
+            int reverseAction = Ghost.reverseOf(ghostHeading[k]);
+            int choices = graph.getMoves(x, y) & ~(1 << reverseAction);
+            int bestAction;
+            if (frightened[k] <= 0 && Integer.bitCount(choices) <= 1)
+                bestAction = (choices == 0 ? reverseAction : Integer.numberOfTrailingZeros(choices));
+            else
+                {
+                Double2D target = target(g, i);
+                bestAction = Agent.NOTHING;
+                if (frightened[k] <= 0)
+                    bestAction = decisions.getAction(x, y, ghostHeading[k], target.x, target.y);
+                if (bestAction == Agent.NOTHING)
+                    bestAction = chooseAction(g, k, x, y, choices, target);
+                }
+            if (bestAction == Agent.NOTHING)
+                bestAction = reverseAction;
+            move(ghostX, ghostY, ghostHeading, k, discretization, bestAction);
+            }
+        else move(ghostX, ghostY, ghostHeading, k, discretization, ghostHeading[k]);
+
+        if (--frightened[k] < 0) frightened[k] = 0;
+        if (--waiting[k] < 0) waiting[k] = 0;
+        }
+
+    /** The getTarget() of Blinky, Pinky, Inky, or Clyde, for ghost i of game g. */
+    Double2D target(int g, int i)
+        {
+        double px = pacX[g] / (double) Agent.UNITS;
+        double py = pacY[g] / (double) Agent.UNITS;
+        switch (i)
+            {
+            case BLINKY:
+                return new Double2D(px, py);
+            case PINKY:
+                return pinkyTarget(g, px, py);
+            case INKY:
+                {
+                Double2D target = pinkyTarget(g, px, py);
+                int b = g * NUM_GHOSTS + BLINKY;
+                double bx = ghostX[b] / (double) Agent.UNITS;
+                double by = ghostY[b] / (double) Agent.UNITS;
+                return new Double2D(field.stx(2 * bx - target.x), field.sty(2 * by - target.y));
+                }
+            case CLYDE:
+                {
+                int k = g * NUM_GHOSTS + CLYDE;
+                Double2D location = new Double2D(ghostX[k] / (double) Agent.UNITS, ghostY[k] / (double) Agent.UNITS);
+                if (field.tds(location, new Double2D(px, py)) > Clyde.DIST * Clyde.DIST)
+                    return new Double2D(px, py);
+                return scatterTarget;
+                }
+            default:
+                throw new RuntimeException("default case should never occur");
+            }
+        }
+
+    Double2D pinkyTarget(int g, double px, double py)
+        {
+        switch (pacHeading[g])
+            {
+            case Agent.N: return new Double2D(px, field.sty(py - Pinky.DIST));
+            case Agent.E: return new Double2D(field.stx(px + Pinky.DIST), py);
+            case Agent.S: return new Double2D(px, field.sty(py + Pinky.DIST));
+            case Agent.W: return new Double2D(field.stx(px - Pinky.DIST), py);
+            }
+        return new Double2D(px, py);
+        }
+
+    /** Ghost.chooseAction(...) for ghost k of game g. */
+    int chooseAction(int g, int k, int x, int y, int choices, Double2D target)
+        {
+        int bestAction = Agent.NOTHING;
+        double bestActionDistanceSquared = Double.POSITIVE_INFINITY;
+        boolean afraid = frightened[k] > 0;
+        int tick = 1;
+        for(int action = Agent.N; action <= Agent.W; action++)
+            if ((choices & (1 << action)) != 0)
+                {
+                double nx = (action == Agent.E ? x + 1 : action == Agent.W ? x - 1 : x);
+                double ny = (action == Agent.S ? y + 1 : action == Agent.N ? y - 1 : y);
+                double dx, dy;
+                if (!afraid && Math.abs(field.stx(target.x - nx)) <= Ghost.MIN_DIST_FOR_TOROIDAL ||
+                    Math.abs(field.sty(target.y - ny)) < -Ghost.MIN_DIST_FOR_TOROIDAL)
+                    { dx = field.tdx(target.x, nx); dy = field.tdy(target.y, ny); }
+                else { dx = target.x - nx; dy = target.y - ny; }
+                double dist = dx * dx + dy * dy;
+                if ((!afraid && (bestAction == Agent.NOTHING || dist < bestActionDistanceSquared)) ||
+                    (afraid && random[g].nextBoolean(1.0 / (tick++))))
+                    { bestAction = action; bestActionDistanceSquared = dist; }
+                }
+        return bestAction;
+        }
+
+    //// MACRO STEPS
+
+    /* Most ticks nothing happens which needs working out: every agent is between grid locations, or on a grid
+       location where it has only one way to go, going straight on at the same speed, and the Pac and the ghosts
+       are too far apart to meet.  So macroStep(...) works out how many ticks it will be until something does
+       happen, and moves everything there in one go, a corridor at a time rather than a tick at a time.  Something
+       happens when
+         - the Pac comes to a decision point, an energizer, or the last dot, or turns around,
+         - a ghost comes to a junction, or to any grid location while frightened (it decides at random there),
+         - a Pac and a ghost could get within collision distance of one another,
+         - a ghost's frightened time runs out (it changes speed), or its waiting time does while it's in the house.
+       Those ticks, and any tick with an agent off its grid (after a change of speed), are done by tick(...), so
+       everything still goes exactly as it would tick for tick. */
+
+    /** How close a Pac and a ghost have to be, in grid locations, to run into one another in tick(...). */
+    static final double COLLISION_DISTANCE = Math.sqrt(0.2);
+
+    /** Returns true if the Pac of game g is at a decision point: on a grid location other than the middle of a
+        straight corridor, or not going anywhere. */
+    public boolean isDecisionPoint(int g)
+        {
+        int heading = pacHeading[g];
+        if (heading == Agent.NOTHING) return true;
+        if (pacX[g] % Agent.UNITS != 0 || pacY[g] % Agent.UNITS != 0) return false;
+        return !isStraight(pacX[g] / Agent.UNITS, pacY[g] / Agent.UNITS, heading);
+        }
+
+    /** Returns true if (x, y) is the middle of a straight corridor along the given heading. */
+    boolean isStraight(int x, int y, int heading)
+        {
+        return graph.getMoves(x, y) == ((1 << heading) | (1 << Ghost.reverseOf(heading)));
+        }
+
+    /** Advances game g, with the Pac holding the given action, until the game is done or the Pac is at a decision
+        point, but at least one tick and at most maxTicks, and returns the number of ticks.  The game ends up just
+        as if it had been step(...)ped that many times with the same action, but most of the ticks are skipped over. */
+    public int macroStep(int g, int action, int maxTicks)
+        {
+        if (action < Agent.N || action > Agent.W) action = Agent.NOTHING;
+        int ticks = 0;
+        while(true)
+            {
+            tick(g, action);
+            ticks++;
+            if (status[g] != PLAYING || isDecisionPoint(g) || ticks >= maxTicks) return ticks;
+            int skip = quietTicks(g, action, maxTicks - ticks);
+            if (skip > 0)
+                {
+                skip(g, action, skip);
+                ticks += skip;
+                if (isDecisionPoint(g) || ticks >= maxTicks) return ticks;
+                }
+            }
+        }
+
+    /** Returns how many of the next ticks of game g, up to limit, nothing happens in. */
+    int quietTicks(int g, int action, int limit)
+        {
+        double pacSpeed = 1.0 / Pac.PAC_DISCRETIZATION;
+        double px = pacX[g] / (double) Agent.UNITS;
+        double py = pacY[g] / (double) Agent.UNITS;
+        for(int i = 0; i < NUM_GHOSTS && limit > 0; i++)
+            {
+            int k = g * NUM_GHOSTS + i;
+            if (frightened[k] > 0) limit = Math.min(limit, frightened[k]);
+            int ghostStep = Agent.UNITS / (frightened[k] > 0 ? Ghost.FRIGHTENED_DISCRETIZATION : Ghost.REGULAR_DISCRETIZATION);
+
+            // a ghost in the house starts to leave once it's done waiting and gets to the exit
+            if (ghostY[k] > jailY - 3 * Agent.UNITS && ghostY[k] <= jailY)
+                limit = Math.min(limit, Math.max(waiting[k], (Math.abs(ghostX[k] - jailX) + ghostStep - 1) / ghostStep));
+
+            // each tick they get at most a step closer, even around corners
+            double ghostSpeed = ghostStep / (double) Agent.UNITS;
+            double dx = Math.abs(px - ghostX[k] / (double) Agent.UNITS);
+            double dy = Math.abs(py - ghostY[k] / (double) Agent.UNITS);
+            dx = Math.min(dx, width - dx);
+            dy = Math.min(dy, height - dy);
+            double apart = (Math.sqrt(dx * dx + dy * dy) - COLLISION_DISTANCE) / (pacSpeed + ghostSpeed);
+            limit = Math.min(limit, (int) Math.max(0, Math.ceil(apart - 1e-6) - 1));
+
+            if (limit > 0) limit = ghostRun(k, limit, false);
+            }
+        if (limit > 0) limit = pacRun(g, action, limit, false);
+        return limit;
+        }
+
+    /** Advances game g the given number of quiet ticks. */
+    void skip(int g, int action, int ticks)
+        {
+        frightenGhosts[g] = false;
+        steps[g] += ticks;
+        pacRun(g, action, ticks, true);
+        for(int i = 0; i < NUM_GHOSTS; i++)
+            {
+            int k = g * NUM_GHOSTS + i;
+            ghostRun(k, ticks, true);
+            exiting[k] = false;
+            frightened[k] = Math.max(0, frightened[k] - ticks);
+            waiting[k] = Math.max(0, waiting[k] - ticks);
+            }
+        }
+
+    /** Follows the Pac of game g, holding the given action, for up to limit ticks, and returns how many of them are
+        quiet.  If move is set, moves him there, eating the dots on the way. */
+    int pacRun(int g, int action, int limit, boolean move)
+        {
+        int step = Agent.UNITS / Pac.PAC_DISCRETIZATION;
+        int x = pacX[g];
+        int y = pacY[g];
+        int heading = pacHeading[g];
+        if (heading == Agent.NOTHING || x % step != 0 || y % step != 0) return 0;
+        int dotsLeft = -1;
+        int ticks = 0;
+        while(ticks < limit)
+            {
+            // in the middle of a straight corridor, or between grid locations, all he can do is go on or turn around
+            if (x % Agent.UNITS == 0 && y % Agent.UNITS == 0 && !isStraight(x / Agent.UNITS, y / Agent.UNITS, heading)) break;
+            if (action == Ghost.reverseOf(heading)) break;
+
+            int n = Math.min(ticksToGrid(x, y, heading, step), limit - ticks);
+            int nx = advanceX(x, heading, n * step);
+            int ny = advanceY(y, heading, n * step);
+            if (nx % Agent.UNITS == 0 && ny % Agent.UNITS == 0)
+                {
+                // he arrives at a grid location: things happen here unless it's just another dot on the way
+                int bit = (ny / Agent.UNITS) * width + nx / Agent.UNITS;
+                if (!isStraight(nx / Agent.UNITS, ny / Agent.UNITS, heading) || isBit(energizers, g, bit)) { ticks += n - 1; break; }
+                if (isBit(dots, g, bit))
+                    {
+                    if (dotsLeft < 0) dotsLeft = countDots(g);
+                    if (dotsLeft == 1) { ticks += n - 1; break; }
+                    dotsLeft--;
+                    if (move) { eat(dots, g, bit); score[g] += 10; }
+                    }
+                }
+            x = nx;
+            y = ny;
+            ticks += n;
+            }
+        if (move)
+            {
+            pacX[g] = x;
+            pacY[g] = y;
+            }
+        return ticks;
+        }
+
+    /** Follows ghost k for up to limit ticks, and returns how many of them it goes without having to make a decision.
+        If move is set, moves it there. */
+    int ghostRun(int k, int limit, boolean move)
+        {
+        int step = Agent.UNITS / (frightened[k] > 0 ? Ghost.FRIGHTENED_DISCRETIZATION : Ghost.REGULAR_DISCRETIZATION);
+        int x = ghostX[k];
+        int y = ghostY[k];
+        int heading = ghostHeading[k];
+        if (x % step != 0 || y % step != 0) return 0;
+        int ticks = 0;
+        while(ticks < limit)
+            {
+            if (x % Agent.UNITS == 0 && y % Agent.UNITS == 0)
+                {
+                // as in ghostStep(...), where there's only one way to go (or none) and it's not frightened
+                if (frightened[k] > 0) break;
+                int reverseAction = Ghost.reverseOf(heading);
+                int choices = graph.getMoves(x / Agent.UNITS, y / Agent.UNITS) & ~(1 << reverseAction);
+                if (Integer.bitCount(choices) > 1) break;
+                heading = (choices == 0 ? reverseAction : Integer.numberOfTrailingZeros(choices));
+                }
+            int n = Math.min(ticksToGrid(x, y, heading, step), limit - ticks);
+            x = advanceX(x, heading, n * step);
+            y = advanceY(y, heading, n * step);
+            ticks += n;
+            }
+        if (move)
+            {
+            ghostX[k] = x;
+            ghostY[k] = y;
+            ghostHeading[k] = heading;
+            }
+        return ticks;
+        }
+
+    /** Returns the number of ticks, going the given way step by step, to the next grid location. */
+    int ticksToGrid(int x, int y, int heading, int step)
+        {
+        switch (heading)
+            {
+            case Agent.N: return (y % Agent.UNITS == 0 ? Agent.UNITS : y % Agent.UNITS) / step;
+            case Agent.E: return (Agent.UNITS - x % Agent.UNITS) / step;
+            case Agent.S: return (Agent.UNITS - y % Agent.UNITS) / step;
+            case Agent.W: return (x % Agent.UNITS == 0 ? Agent.UNITS : x % Agent.UNITS) / step;
+            default: throw new RuntimeException("default case should never occur");
+            }
+        }
+
+    /** x after going the given distance the given way, wrapped around as move(...) does it a step at a time.  Like
+        move(...) it leaves x alone otherwise, even if rounding off the grid put it just past the edge. */
+    int advanceX(int x, int heading, int distance)
+        {
+        int w = width * Agent.UNITS;
+        if (heading == Agent.E) { x += distance; if (x >= w) x -= w; }
+        else if (heading == Agent.W) { x -= distance; if (x < 0) x += w; }
+        return x;
+        }
+
+    int advanceY(int y, int heading, int distance)
+        {
+        int h = height * Agent.UNITS;
+        if (heading == Agent.S) { y += distance; if (y >= h) y -= h; }
+        else if (heading == Agent.N) { y -= distance; if (y < 0) y += h; }
+        return y;
+        }
+
+    boolean isBit(long[] bits, int g, int bit)
+        {
+        return (bits[g * words + (bit >>> 6)] & (1L << bit)) != 0;
+        }
+
+    /** The number of dots and energizers left in game g. */
+    int countDots(int g)
+        {
+        int count = 0;
+        for(int i = g * words; i < (g + 1) * words; i++)
+            count += Long.bitCount(dots[i]) + Long.bitCount(energizers[i]);
+        return count;
+        }
+    }
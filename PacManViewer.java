@@ -0,0 +1,201 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+
+/** PacManViewer watches a game which runs as fast as it can on a thread of its own.  Unlike PacManWithUI, where
+    the display is a step of the game and a RateAdjuster slows the game down to the frame rate, here the two have
+    nothing to do with each other.  The game publishes FrameSnapshots through a FrameExchanger, a new one only
+    once the viewer has taken the last, and the viewer draws the latest one 60 times a second on the Swing
+    thread.  It never looks at the live model, so it can't catch a Pac or a ghost halfway through a step, and it
+    never slows the game down.
+
+    <pre>java sim.app.pacman.PacManViewer [-seed 1] [-pacs 1] [-fps 60] [-maze 200x200]</pre>
+
+    <p>The viewer only watches: the Pacs play by themselves. */
+
+public class PacManViewer extends JComponent
+    {
+    private static final long serialVersionUID = 1;
+
+    /** Pixels per grid cell, on mazes up to MAX_SIZE / CELL on a side. */
+    public static final int CELL = 16;
+    /** The most pixels on a side the maze takes: bigger mazes get smaller cells, down to one pixel. */
+    public static final int MAX_SIZE = 800;
+
+    /** The suffixes of the ghosts' images for each face of Ghost.doubleValue(). */
+    static final String[] FACES = { "u", "l", "d", "r" };
+
+    FrameExchanger frames;
+    MazePortrayal mazeRenderer = new MazePortrayal(null);
+    BufferedImage mazeImage;
+    MazeGraph mazeImageGraph;
+    java.util.HashMap<String, Image[]> ghostImages = new java.util.HashMap<String, Image[]>();
+    Arc2D.Double arc = new Arc2D.Double();
+    Font font = new Font("SansSerif", Font.BOLD, 18);
+
+    /** For the steps per second shown at the bottom. */
+    long lastSteps;
+    long lastNanos;
+    double stepsPerSecond;
+
+    /** Pixels per grid cell for this viewer's maze. */
+    int cell;
+
+    /** Creates a viewer for the classic mazes. */
+    public PacManViewer(FrameExchanger frames)
+        {
+        this(frames, 28, 35);
+        }
+
+    /** Creates a viewer for mazes of the given size. */
+    public PacManViewer(FrameExchanger frames, int width, int height)
+        {
+        this.frames = frames;
+        cell = Math.max(1, Math.min(CELL, MAX_SIZE / Math.max(width, height)));
+        setPreferredSize(new Dimension(width * cell, height * cell));
+        setOpaque(true);
+        }
+
+    Image[] getGhostImages(String name)
+        {
+        Image[] images = ghostImages.get(name);
+        if (images == null)
+            {
+            String prefix = "images/" + name.toLowerCase();
+            images = new Image[6];
+            for(int i = 0; i < FACES.length; i++)
+                images[i] = new ImageIcon(PacManWithUI.class.getResource(prefix + FACES[i] + ".png")).getImage();
+            images[4] = new ImageIcon(PacManWithUI.class.getResource("images/frightened.png")).getImage();
+            images[5] = new ImageIcon(PacManWithUI.class.getResource("images/frightened2.png")).getImage();
+            ghostImages.put(name, images);
+            }
+        return images;
+        }
+
+    protected void paintComponent(Graphics graphics)
+        {
+        Graphics2D g = (Graphics2D) graphics;
+        g.setColor(Color.black);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        FrameSnapshot frame = frames.latest();
+        if (frame == null) return;
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // the maze, drawn once per maze
+        if (mazeImage == null || mazeImageGraph != frame.graph)
+            {
+            mazeImage = mazeRenderer.render(frame.graph.getField(), g.getDeviceConfiguration(),
+                frame.getWidth() * cell, frame.getHeight() * cell, 0, 0);
+            mazeImageGraph = frame.graph;
+            }
+        g.drawImage(mazeImage, -MazePortrayal.PAD, -MazePortrayal.PAD, null);
+
+        // the dots, centered in their cells like everything else
+        g.setColor(Color.white);
+        int dot = (int)(cell * DotPortrayal.DOT_SCALE);
+        int energizer = (int)(cell * DotPortrayal.ENERGIZER_SCALE);
+        for(int y = 0; y < frame.getHeight(); y++)
+            for(int x = 0; x < frame.getWidth(); x++)
+                {
+                int cx = x * cell + cell / 2;
+                int cy = y * cell + cell / 2;
+                if (frame.isDot(x, y)) g.fillOval(cx - dot / 2, cy - dot / 2, dot, dot);
+                if (frame.isEnergizer(x, y)) g.fillOval(cx - energizer / 2, cy - energizer / 2, energizer, energizer);
+                }
+
+        for(int i = frame.getNumPacs() - 1; i >= 0; i--)
+            if (frame.isPacThere(i))
+                PacPortrayal.drawPac(g, arc, i == 0 ? Color.yellow : Color.green,
+                    (frame.getPacX(i) + 0.5) * cell, (frame.getPacY(i) + 0.5) * cell, cell, frame.getPacAction(i), frame.time);
+
+        for(int i = 0; i < frame.getNumGhosts(); i++)
+            {
+            Image image = getGhostImages(frame.getGhostName(i))[frame.getGhostFace(i)];
+            g.drawImage(image, (int)(frame.getGhostX(i) * cell - cell / 2), (int)(frame.getGhostY(i) * cell - cell / 2),
+                2 * cell, 2 * cell, null);
+            }
+
+        // the scores, and how fast the game is going
+        long nanos = System.nanoTime();
+        if (nanos - lastNanos > 1000000000L)
+            {
+            if (lastNanos != 0) stepsPerSecond = (frame.steps - lastSteps) * 1000000000.0 / (nanos - lastNanos);
+            lastNanos = nanos;
+            lastSteps = frame.steps;
+            }
+        g.setFont(font);
+        g.setColor(Color.white);
+        int textY = (Overlay.GUTTER + g.getFontMetrics().getAscent()) / 2;
+        int width = getWidth() - Overlay.BORDER * 2;
+        g.drawString("Deaths: " + frame.deaths, Overlay.BORDER, textY);
+        g.drawString("Level: " + frame.level, width / 3 + Overlay.BORDER, textY);
+        g.drawString("Score: " + frame.score, width * 2 / 3 + Overlay.BORDER, textY);
+        g.drawString("Steps/s: " + (long) stepsPerSecond, Overlay.BORDER, getHeight() - Overlay.GUTTER + textY);
+        }
+
+    static String argumentForKey(String key, String[] args, String defaultValue)
+        {
+        for(int i = 0; i < args.length - 1; i++)
+            if (args[i].equalsIgnoreCase(key))
+                return args[i + 1];
+        return defaultValue;
+        }
+
+    public static void main(String[] args)
+        {
+        long seed = Long.parseLong(argumentForKey("-seed", args, "" + System.currentTimeMillis()));
+        final double fps = Double.parseDouble(argumentForKey("-fps", args, "60"));
+
+        final PacMan pacman = new PacMan(seed);
+        pacman.numPacs = Integer.parseInt(argumentForKey("-pacs", args, "1"));
+        String maze = argumentForKey("-maze", args, null);
+        if (maze != null)
+            {
+            String[] size = maze.toLowerCase().split("x");
+            pacman.mazeWidth = Integer.parseInt(size[0]);
+            pacman.mazeHeight = Integer.parseInt(size[size.length - 1]);
+            }
+        pacman.verbose = false;
+        pacman.frames = new FrameExchanger();
+        pacman.start();
+
+        // the game, flat out
+        Thread game = new Thread(new Runnable()
+            {
+            public void run()
+                {
+                while(pacman.schedule.step(pacman)) { }
+                }
+            }, "PacManViewer game");
+        game.setDaemon(true);
+        game.start();
+
+        // the viewer, fps times a second
+        SwingUtilities.invokeLater(new Runnable()
+            {
+            public void run()
+                {
+                final PacManViewer viewer = new PacManViewer(pacman.frames, pacman.maze.getWidth(), pacman.maze.getHeight());
+                JFrame frame = new JFrame("MASON Pac Man Viewer");
+                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                frame.getContentPane().add(viewer);
+                frame.setResizable(false);
+                frame.pack();
+                frame.setVisible(true);
+                new Timer((int) Math.max(1, 1000 / fps), new ActionListener()
+                    {
+                    public void actionPerformed(ActionEvent e) { viewer.repaint(); }
+                    }).start();
+                }
+            });
+        }
+    }
@@ -64,9 +64,9 @@ public class PacManWithUI extends GUIState
         setupPortrayals();
         }
         
-    ValueGridPortrayal2D mazePortrayal = new ValueGridPortrayal2D();
+    MazePortrayal mazePortrayal = new MazePortrayal(this);
     ContinuousPortrayal2D agentPortrayal = new ContinuousPortrayal2D();
-    ContinuousPortrayal2D dotPortrayal = new ContinuousPortrayal2D();
+    DotPortrayal dotPortrayal = new DotPortrayal(this);
         
     public void setupPortrayals()
         {
@@ -133,21 +133,24 @@ public class PacManWithUI extends GUIState
                     new ImagePortrayal2D(this.getClass(), "images/frightened2.png", 2),
                     }));
 
-        // Create the dot portrayal (also the energizers)
-        dotPortrayal.setField(pacman.dots);
-
-        // Energizers are big
-        dotPortrayal.setPortrayalForClass(Energizer.class, new OvalPortrayal2D(Color.white, 1));
-
-        // dots are small
-        dotPortrayal.setPortrayalForClass(Dot.class, new OvalPortrayal2D(Color.white, 0.4));
+        // The dot portrayal (also the energizers) draws straight from pacman.dots: energizers are big, dots are small.
                 
-        // set up the maze portrayal
-        mazePortrayal.setPortrayalForAll(new MazeCellPortrayal(pacman.maze));
-        mazePortrayal.setField(pacman.maze);
+        // the maze portrayal draws straight from pacman.maze too, but it keeps an image of the walls: draw it again
+        mazePortrayal.invalidate();
+        dirtyRegions.reset();
                 
-        // add the RateAdjuster
-        scheduleRepeatingImmediatelyAfter(new RateAdjuster(FRAMES_PER_SECOND));
+        // add the RateAdjuster, unless we're in turbo mode.  A new one each time turbo mode is turned off, else it
+        // would think it's far behind and let the game race on to catch up.
+        scheduleRepeatingImmediatelyAfter(new Steppable()
+            {
+            RateAdjuster rate;
+            public void step(SimState state)
+                {
+                if (turbo) { rate = null; return; }
+                if (rate == null) rate = new RateAdjuster(FRAMES_PER_SECOND);
+                rate.step(state);
+                }
+            });
                 
         // reschedule the displayer
         display.reset();
@@ -158,6 +161,106 @@ public class PacManWithUI extends GUIState
 
 
 
+    /** If true, each frame only the parts of the display which changed are painted, rather than all of it.
+        See DirtyRegions. */
+    public boolean incrementalRepaint = true;
+
+    DirtyRegions dirtyRegions = new DirtyRegions();
+    /** The regions waiting to be painted on the Swing event thread, and whether it's been asked to. */
+    java.util.ArrayList<Rectangle> pendingRegions = new java.util.ArrayList<Rectangle>();
+    boolean paintPending;
+
+    Runnable paintRegions = new Runnable()
+        {
+        public void run()
+            {
+            Rectangle[] regions;
+            synchronized(pendingRegions)
+                {
+                regions = pendingRegions.toArray(new Rectangle[pendingRegions.size()]);
+                pendingRegions.clear();
+                paintPending = false;
+                }
+            if (display == null) return;
+            // each region on its own: repaint(...) would paint the bounding box of all of them
+            long time = System.nanoTime();
+            for(int i = 0; i < regions.length; i++)
+                display.insideDisplay.paintImmediately(regions[i]);
+            paintNanos = average(paintNanos, System.nanoTime() - time);
+            }
+        };
+
+    /** Called by the display each step on the model thread.  Works out what changed since the last frame and
+        has the Swing event thread paint just that, or returns false if the display should paint all of itself
+        as usual.  If the event thread hasn't caught up with the last frame yet, this frame's regions are added
+        to those it's yet to paint. */
+    boolean repaintRegions()
+        {
+        if (!incrementalRepaint || display == null) return false;
+        PacMan pacman = (PacMan)state;
+        double scale = display.getScale();
+        double width = display.insideDisplay.width * scale;
+        Rectangle scores = new Rectangle(0, 0, (int) Math.ceil(width), (int) Math.ceil(Overlay.GUTTER * scale));
+        synchronized(pendingRegions)
+            {
+            if (!dirtyRegions.update(pacman, width / pacman.maze.getWidth(),
+                    display.insideDisplay.height * scale / pacman.maze.getHeight(), scores, pendingRegions))
+                {
+                pendingRegions.clear();
+                return false;
+                }
+            if (turbo)      // the Overlay's turbo text at the bottom
+                {
+                int gutter = (int) Math.ceil(Overlay.GUTTER * scale);
+                pendingRegions.add(new Rectangle(0, (int)(display.insideDisplay.height * scale) - gutter, (int) Math.ceil(width), gutter));
+                }
+            if (paintPending) return true;
+            paintPending = true;
+            }
+        SwingUtilities.invokeLater(paintRegions);
+        return true;
+        }
+
+    /** If true, the game runs as fast as it can rather than at FRAMES_PER_SECOND, and only some of its steps are
+        drawn.  The T key turns it on and off. */
+    public boolean turbo = false;
+
+    /** In turbo mode, draw every turboSkip-th step.  If 0, pick the number from how long a step and drawing take:
+        draw about as often as we can draw, and no more than FRAMES_PER_SECOND times a second. */
+    public int turboSkip = 0;
+
+    /** Moving averages of the time from one step to the next and of the time it takes to draw. */
+    double stepNanos;
+    volatile double paintNanos;
+    long lastStepTime;
+    int stepsSinceDrawn;
+
+    static double average(double average, double value)
+        {
+        return average == 0 ? value : average * 0.9 + value * 0.1;
+        }
+
+    /** Returns the number of steps per frame drawn in turbo mode. */
+    public int getTurboSkip()
+        {
+        if (turboSkip > 0) return turboSkip;
+        if (stepNanos == 0) return 1;
+        double frameNanos = Math.max(1000000000.0 / FRAMES_PER_SECOND, paintNanos);
+        return Math.max(1, (int)(frameNanos / stepNanos));
+        }
+
+    /** Called in turbo mode each step by the display: returns whether it should draw this step. */
+    boolean isTurboFrame()
+        {
+        long time = System.nanoTime();
+        if (lastStepTime != 0 && time - lastStepTime < 1000000000L)     // not after a pause
+            stepNanos = average(stepNanos, time - lastStepTime);
+        lastStepTime = time;
+        if (++stepsSinceDrawn < getTurboSkip()) return false;
+        stepsSinceDrawn = 0;
+        return true;
+        }
+
     public void init(final Controller c)
         {
         super.init(c);
@@ -166,6 +269,16 @@ public class PacManWithUI extends GUIState
         display = new Display2D(448,560,this)
             {
             public void createConsoleMenu() { }
+            public void step(SimState state)
+                {
+                if (turbo && !isTurboFrame()) return;
+                long time = System.nanoTime();
+                if (!repaintRegions())
+                    {
+                    super.step(state);
+                    paintNanos = average(paintNanos, System.nanoTime() - time);
+                    }
+                }
             public void quit()
                 {
                 super.quit();
@@ -267,6 +380,11 @@ public class PacManWithUI extends GUIState
                         cont.pressStop();
                         cont.pressPlay();
                         break;
+                    case KeyEvent.VK_T:             // Turbo mode on or off
+                        turbo = !turbo;
+                        stepsSinceDrawn = 0;
+                        synchronized(pendingRegions) { dirtyRegions.reset(); }     // draw it all next time, with the new text
+                        break;
                     case KeyEvent.VK_P:             // Pause or unpause the game
                         cont.pressPause();
                         break;
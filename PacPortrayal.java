@@ -33,19 +33,23 @@ public class PacPortrayal extends SimplePortrayal2D
     public void draw(Object object, Graphics2D g, DrawInfo2D info)
         {
         Pac pac = (Pac)object;
-                
-        int time = (int)(pacman.schedule.getTime());
+        drawPac(g, arc, color, info.draw.x, info.draw.y, info.draw.width, pac.lastAction, pacman.schedule.getTime());
+        }
+
+    /** Draws a Pac centered at (x, y) in a cell width wide, facing the way of lastAction (as in Agent), with his
+        mouth as open as it is at the given time.  PacManViewer draws Pacs with this too. */
+    public static void drawPac(Graphics2D g, Arc2D.Double arc, Color color, double x, double y, double width, int lastAction, double schedTime)
+        {
+        int time = (int)schedTime;
         int step = time % (MOUTH_RATE * 2);
         if (step > MOUTH_RATE)
             step = MOUTH_RATE - (step - MOUTH_RATE);  // close mouth
         // now step cleverly goes from 0 *through* MOUTH_RATE
                 
-        double x = info.draw.x;
-        double y = info.draw.y;
-        double w = info.draw.width * 0.8;
+        double w = width * 0.8;
                 
         double a = 0;  // Pac.E
-        switch (pac.lastAction)
+        switch (lastAction)
             {
             case Pac.N: a = 90; break;
             case Pac.E: a = 0; break;
@@ -23,7 +23,7 @@ public class Pinky extends Ghost
 
     public static final int DIST = 4;
         
-    public Double2D getStartLocation() { return new Double2D(12.5, 16); }
+    public Double2D getStartLocation() { Double2D exit = pacman.graph.getHouseExit(); return new Double2D(exit.x - 1, exit.y); }
 
     public Pinky(PacMan pacman) 
         {
@@ -0,0 +1,332 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import java.io.*;
+
+/** A Replay is the input of a game: its random number seed and the decision the Pac made every time he
+    stepped.  The game only depends on those (the Pac's policy has its own random number generator,
+    PacMan.policyRandom), so a game can be replayed exactly from its Replay without running the policy
+    at all.  That's what ReplayPac and PacManReplay do.
+
+    <p>To record a game, set PacMan.recording to a new Replay before start(), and call finish(...) when
+    you're done.  To replay one, set PacMan.playback to it instead, and step the schedule getSteps() times.
+
+    <p>A Pac almost always keeps doing what he did last step, so the decisions are stored as runs:
+    each run is one varint, (length - 1) << 3 | (action + 1).  Along with the decisions we keep a
+    checkpoint every time a level is won, and one at the end: the levels won, score, deaths, and countedSteps
+    at that point.  A replay checks its checkpoints as it goes, and remembers the first one which didn't match.
+
+    <p>The replay also keeps the settings of the game which change how it plays out, so playback sets the game up
+    the same way.  PacMan.animate is one of them: without the animations a game takes far fewer schedule steps.  The
+    others are the numbers of Pacs and ghosts and the generated mazes' size and seed.
+
+    <p>On disk a Replay is MAGIC, VERSION, and then varints: the seed, PacMan.maxLevelsWon, PacMan.animate (1 or 0),
+    PacMan.numPacs, numGhosts, mazeWidth, mazeHeight, and mazeSeed, the number of schedule steps, the number of
+    decisions, the length of the decision runs in bytes, the runs, the number of checkpoints, and the checkpoints,
+    each number as the difference from the previous checkpoint.
+    That comes to a few hundred bytes per level.
+*/
+
+public class Replay
+    {
+    static final int MAGIC = 0x50414352;        // "PACR"
+    static final int VERSION = 1;
+
+    /** The number of ints in a checkpoint: levels won, score, deaths, and countedSteps. */
+    static final int CHECKPOINT_SIZE = 4;
+
+    long seed;
+    int maxLevelsWon;
+    boolean animate = true;
+    int numPacs = 1;
+    int numGhosts = 4;
+    int mazeWidth;
+    int mazeHeight;
+    long mazeSeed;
+    long steps;
+    long numDecisions;
+
+    /** The decision runs. */
+    byte[] runs = new byte[256];
+    int length;
+
+    int[] checkpoints = new int[CHECKPOINT_SIZE * 16];
+    int numCheckpoints;
+
+    // while recording: the run so far
+    int runAction = Agent.NOTHING;
+    int runLength;
+
+    // while playing back: where we are
+    int position;
+    int remaining;
+    int action = Agent.NOTHING;
+    long decisionsPlayed;
+    int checkpointsVerified;
+    String mismatch;
+
+    Replay() { }
+
+    /** Creates an empty Replay for recording the given game, which must be set up already.  Set it as
+        pacman.recording before pacman.start(). */
+    public Replay(PacMan pacman)
+        {
+        seed = pacman.seed();
+        maxLevelsWon = pacman.maxLevelsWon;
+        animate = pacman.animate;
+        numPacs = pacman.numPacs;
+        numGhosts = pacman.numGhosts;
+        mazeWidth = pacman.mazeWidth;
+        mazeHeight = pacman.mazeHeight;
+        mazeSeed = pacman.mazeSeed;
+        }
+
+    public long getSeed() { return seed; }
+
+    /** Returns the number of schedule steps the recorded game ran. */
+    public long getSteps() { return steps; }
+
+    public long getNumDecisions() { return numDecisions; }
+
+    public int getNumCheckpoints() { return numCheckpoints; }
+
+    /** Returns a description of the first checkpoint which didn't match during playback, or null if they all did. */
+    public String getMismatch() { return mismatch; }
+
+    /** Creates a game set up to play this replay back.  You still have to start() it. */
+    public PacMan createModel()
+        {
+        rewind();
+        PacMan pacman = new PacMan(seed);
+        pacman.maxLevelsWon = maxLevelsWon;
+        pacman.animate = animate;
+        pacman.numPacs = numPacs;
+        pacman.numGhosts = numGhosts;
+        pacman.mazeWidth = mazeWidth;
+        pacman.mazeHeight = mazeHeight;
+        pacman.mazeSeed = mazeSeed;
+        pacman.verbose = false;
+        pacman.playback = this;
+        return pacman;
+        }
+
+    //// RECORDING
+
+    /** Records the Pac's decision for this step. */
+    public void record(int action)
+        {
+        numDecisions++;
+        if (action == runAction && runLength > 0) runLength++;
+        else
+            {
+            flush();
+            runAction = action;
+            runLength = 1;
+            }
+        }
+
+    void flush()
+        {
+        if (runLength > 0)
+            writeVarLong(((runLength - 1L) << 3) | (runAction + 1));
+        runLength = 0;
+        }
+
+    void writeVarLong(long value)
+        {
+        if (length + 10 > runs.length)
+            runs = java.util.Arrays.copyOf(runs, runs.length * 2);
+        while((value & ~0x7FL) != 0)
+            {
+            runs[length++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+            }
+        runs[length++] = (byte) value;
+        }
+
+    /** Adds a checkpoint with the game's present results. */
+    public void checkpoint(PacMan pacman)
+        {
+        if ((numCheckpoints + 1) * CHECKPOINT_SIZE > checkpoints.length)
+            checkpoints = java.util.Arrays.copyOf(checkpoints, checkpoints.length * 2);
+        int i = numCheckpoints++ * CHECKPOINT_SIZE;
+        checkpoints[i] = pacman.levelsWon;
+        checkpoints[i + 1] = pacman.score;
+        checkpoints[i + 2] = pacman.deaths;
+        checkpoints[i + 3] = pacman.countedSteps;
+        }
+
+    /** Ends the recording after the given number of schedule steps, adding a final checkpoint. */
+    public void finish(PacMan pacman, long steps)
+        {
+        flush();
+        this.steps = steps;
+        checkpoint(pacman);
+        }
+
+    //// PLAYBACK
+
+    /** Goes back to the start of the replay. */
+    public void rewind()
+        {
+        position = 0;
+        remaining = 0;
+        action = Agent.NOTHING;
+        decisionsPlayed = 0;
+        checkpointsVerified = 0;
+        mismatch = null;
+        }
+
+    /** Returns the Pac's next decision, or NOTHING if the recording has run out. */
+    public int nextDecision()
+        {
+        if (remaining == 0)
+            {
+            if (position >= length)
+                {
+                if (mismatch == null) mismatch = "the game went on for more than the " + numDecisions + " recorded decisions";
+                return Agent.NOTHING;
+                }
+            long run = readVarLong();
+            action = (int)(run & 7) - 1;
+            remaining = (int)(run >>> 3) + 1;
+            }
+        remaining--;
+        decisionsPlayed++;
+        return action;
+        }
+
+    long readVarLong()
+        {
+        long value = 0;
+        for(int shift = 0; ; shift += 7)
+            {
+            byte b = runs[position++];
+            value |= (b & 0x7FL) << shift;
+            if ((b & 0x80) == 0) return value;
+            }
+        }
+
+    /** Checks the game's present results against the next checkpoint. */
+    public void verify(PacMan pacman)
+        {
+        int c = checkpointsVerified++;
+        if (mismatch != null) return;
+        if (c >= numCheckpoints)
+            {
+            mismatch = "there were more than the " + numCheckpoints + " recorded checkpoints";
+            return;
+            }
+        int i = c * CHECKPOINT_SIZE;
+        if (checkpoints[i] != pacman.levelsWon || checkpoints[i + 1] != pacman.score ||
+            checkpoints[i + 2] != pacman.deaths || checkpoints[i + 3] != pacman.countedSteps)
+            mismatch = "checkpoint " + c + ": recorded levels won " + checkpoints[i] + ", score " + checkpoints[i + 1] +
+                ", deaths " + checkpoints[i + 2] + ", steps " + checkpoints[i + 3] + " but replayed levels won " + pacman.levelsWon +
+                ", score " + pacman.score + ", deaths " + pacman.deaths + ", steps " + pacman.countedSteps;
+        }
+
+    /** Checks the final checkpoint, and that the replay used up all the decisions and checkpoints.  Returns
+        true if everything matched. */
+    public boolean verifyEnd(PacMan pacman)
+        {
+        verify(pacman);
+        if (mismatch == null && decisionsPlayed != numDecisions)
+            mismatch = "only " + decisionsPlayed + " of the " + numDecisions + " recorded decisions were used";
+        if (mismatch == null && checkpointsVerified != numCheckpoints)
+            mismatch = "only " + checkpointsVerified + " of the " + numCheckpoints + " recorded checkpoints were reached";
+        return mismatch == null;
+        }
+
+    //// FILES
+
+    static void writeVarLong(DataOutput out, long value) throws IOException
+        {
+        while((value & ~0x7FL) != 0)
+            {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+            }
+        out.writeByte((int) value);
+        }
+
+    static long readVarLong(DataInput in) throws IOException
+        {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7)
+            {
+            byte b = in.readByte();
+            value |= (b & 0x7FL) << shift;
+            if ((b & 0x80) == 0) return value;
+            }
+        throw new IOException("Malformed varint");
+        }
+
+    /** Signed numbers are stored zigzagged so small negative numbers stay small. */
+    static long zigzag(long value) { return (value << 1) ^ (value >> 63); }
+    static long unzigzag(long value) { return (value >>> 1) ^ -(value & 1); }
+
+    public void write(DataOutput out) throws IOException
+        {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeVarLong(out, zigzag(seed));
+        writeVarLong(out, zigzag(maxLevelsWon));
+        writeVarLong(out, animate ? 1 : 0);
+        writeVarLong(out, numPacs);
+        writeVarLong(out, numGhosts);
+        writeVarLong(out, mazeWidth);
+        writeVarLong(out, mazeHeight);
+        writeVarLong(out, zigzag(mazeSeed));
+        writeVarLong(out, steps);
+        writeVarLong(out, numDecisions);
+        writeVarLong(out, length);
+        out.write(runs, 0, length);
+        writeVarLong(out, numCheckpoints);
+        for(int i = 0; i < numCheckpoints * CHECKPOINT_SIZE; i++)
+            writeVarLong(out, zigzag(checkpoints[i] - (i < CHECKPOINT_SIZE ? 0 : checkpoints[i - CHECKPOINT_SIZE])));
+        }
+
+    public static Replay read(DataInput in) throws IOException
+        {
+        if (in.readInt() != MAGIC) throw new IOException("Not a PacMan replay");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unknown replay version " + version);
+        Replay replay = new Replay();
+        replay.seed = unzigzag(readVarLong(in));
+        replay.maxLevelsWon = (int) unzigzag(readVarLong(in));
+        replay.animate = readVarLong(in) != 0;
+        replay.numPacs = (int) readVarLong(in);
+        replay.numGhosts = (int) readVarLong(in);
+        replay.mazeWidth = (int) readVarLong(in);
+        replay.mazeHeight = (int) readVarLong(in);
+        replay.mazeSeed = unzigzag(readVarLong(in));
+        replay.steps = readVarLong(in);
+        replay.numDecisions = readVarLong(in);
+        replay.length = (int) readVarLong(in);
+        replay.runs = new byte[replay.length];
+        in.readFully(replay.runs);
+        replay.numCheckpoints = (int) readVarLong(in);
+        replay.checkpoints = new int[replay.numCheckpoints * CHECKPOINT_SIZE];
+        for(int i = 0; i < replay.checkpoints.length; i++)
+            replay.checkpoints[i] = (int) unzigzag(readVarLong(in)) + (i < CHECKPOINT_SIZE ? 0 : replay.checkpoints[i - CHECKPOINT_SIZE]);
+        return replay;
+        }
+
+    public void write(File file) throws IOException
+        {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try { write(out); }
+        finally { out.close(); }
+        }
+
+    public static Replay read(File file) throws IOException
+        {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try { return read(in); }
+        finally { in.close(); }
+        }
+    }
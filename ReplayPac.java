@@ -0,0 +1,33 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import sim.engine.*;
+
+/** A ReplayPac doesn't think for himself: every step he takes the next decision out of the model's playback
+    Replay and does it just like a Pac would have.  PacMan makes ReplayPacs instead of Pacs when it has a
+    playback Replay. */
+
+public class ReplayPac extends Pac
+    {
+    private static final long serialVersionUID = 1;
+
+    public ReplayPac(PacMan pacman, int tag, ExplorationMap env)
+        {
+        super(pacman, tag, env);
+        }
+
+    protected void doPolicyStep(SimState state)
+        {
+        nextAction = pacman.playback.nextDecision();
+
+        // pac man delays the next action until he can do it, just like Pac
+        if (isPossibleToDoAction(nextAction))
+            performAction(nextAction);
+        else if (isPossibleToDoAction(lastAction))
+            performAction(lastAction);
+        }
+    }
@@ -2,9 +2,7 @@ package sim.app.pacman;
 
 import sim.field.continuous.Continuous2D;
 import sim.field.grid.IntGrid2D;
-import sim.util.Bag;
 import sim.util.Double2D;
-import sim.util.MutableDouble2D;
 
 /**
  * Sensor class. This class is initialized with the new Pac. Each step it gets the new position of the Pac and can therefore
@@ -14,10 +12,11 @@ import sim.util.MutableDouble2D;
 public class Sensor {
 
 	public IntGrid2D maze;
-	public Continuous2D dots;
+	public MazeGraph graph;
+	public DotField dots;
 	public Continuous2D agents;
+	public Occupancy occupancy;
 
-	public int[][] umfeld;
 	public int positionPacX;
 	public int positionPacY;
 	
@@ -37,26 +36,31 @@ public class Sensor {
 	 * Local instance of PacMan so that we can access relevant attributes and methods.
 	 */
 	PacMan pacman;
+
+	/**
+	 * The Pac this sensor belongs to.
+	 */
+	Pac pac;
 	
 	/**
-	 * This array stores the perceptions of Pac's sensor. It only stores if the space around Pac was steppable
+	 * This map stores the perceptions of Pac's sensor. It only stores if the space around Pac was steppable
 	 * or not. No coins are observed.
-	 * 0 = The spot hasn't been discovered yet.
-	 * 1 = There was a wall at this spot.
-	 * 2 = There was a steppable path.
+	 * UNEXPLORED = The spot hasn't been discovered yet.
+	 * WALL = There was a wall at this spot.
+	 * PATH = There was a steppable path.
 	 * 
-	 * Because of the header and footer of the game, relevant information about the maze is stored in the rows (X-dimension) 3 to 31.
+	 * The map is as big as the maze. The Pac hands his sensor the one kept in PacMan, so that
 	 * Pac's information about the maze is being transferred into his "next life". Only when he finishes the game it gets deleted.
 	 * 
 	 */
-	public int [][] sensEnv = new int [28] [35];
+	public ExplorationMap sensEnv;
 	
 	/**
-	 * Get the array with Pac's sensor information.
+	 * Get the map with Pac's sensor information.
 	 * 
-	 * @return The sensor array.
+	 * @return The sensor map.
 	 */
-	public int[][] getSensEnv() {
+	public ExplorationMap getSensEnv() {
 		return sensEnv;
 	}
 
@@ -71,27 +75,22 @@ public class Sensor {
 		boolean result = false;
 		int vision = 1;
 		
-		// Get the location of Pac as a Double
-		Pac pac = pacman.pacs[0];
-		Double locX = (double) Math.round(pac.positionPacX);
-		Double locY = (double) Math.round(pac.positionPacY);
+		// Get the location of our Pac as a Double (not pacs[0], who may be some other Pac, or dead)
+		int locX = (int) Math.round(pac.positionPacX);
+		int locY = (int) Math.round(pac.positionPacY);
 		// Round the double according to: <0.5 - then round down, >=0.5 - then round up
 		
 		
-		Double2D location = new Double2D(locX, locY - vision);
-		if (checkForGhosts(location)){
+		if (checkForGhosts(locX, locY - vision)){
 			result = true;
 		}
-		location = new Double2D(locX, locY + vision);
-		if (checkForGhosts(location)){
+		else if (checkForGhosts(locX, locY + vision)){
 			result = true;
 		}
-		location = new Double2D(locX + vision, locY);
-		if (checkForGhosts(location)){
+		else if (checkForGhosts(locX + vision, locY)){
 			result = true;
 		}
-		location = new Double2D(locX - vision, locY);
-		if (checkForGhosts(location)){
+		else if (checkForGhosts(locX - vision, locY)){
 			result = true;
 		}
 		return result;
@@ -104,7 +103,7 @@ public class Sensor {
 	 * @param positionPacX
 	 */
 	public void setPositionPacX(double positionPacX) {
-		if (positionPacX > 26.4) {
+		if (positionPacX > graph.getWidth() - 1.6) {
 			this.positionPacX = 0;
 		} else {
 			positionPacX = Math.round(positionPacX);
@@ -134,12 +133,12 @@ public class Sensor {
 	 */
 	public Sensor (PacMan pacman) {
 		this.maze = pacman.maze;
+		this.graph = pacman.graph;
 		this.agents = pacman.agents;
+		this.occupancy = pacman.occupancy;
 		this.dots = pacman.dots;
 		
 		this.pacman = pacman;
-
-		umfeld  = maze.field;
 	}
 
 	/**
@@ -149,21 +148,9 @@ public class Sensor {
 	 * @return True if there is a dot, false if there isn't.
 	 */
 	public boolean checkForDots (Double2D location) {
-		boolean result = false;
-
-		// Collect all dots at the given location
-		Bag bagAtLocation = dots.getObjectsAtLocation(location);
-
-		// Iterate through the bag and check for a dot
-		try {	
-			for (Object obj : bagAtLocation) {
-				if (obj.getClass().equals(Dot.class)) {
-					result = true;
-				}
-			} } catch (NullPointerException e) {
-				//System.out.println("No dots found at location");
-			}
-		return result;
+		// Dots only sit right on the grid, so just look up the bit for this location.
+		// Locations outside the maze never have dots.
+		return dots.isDot((int) location.x, (int) location.y);
 	}
 
 	/**
@@ -175,40 +162,166 @@ public class Sensor {
 	 * @return Returns a boolean. True if there are some bad ghost(s) and false if there isn't/aren't.
 	 */
 	public boolean checkForGhosts (Double2D location) {
-		boolean result = false;
-		
-		MutableDouble2D loc = new MutableDouble2D(location);
-		
-		Bag nearby = null;
-		// Get the bad boys into this bag in order to iterate through them. But only get those who
-		// are in distance of 0.3 (see Pac.java - they use it to locate ghosts at a certain point).
-		// CHANGE 25.11.16 -- distance changed to 0.5		
-		nearby = agents.getNeighborsWithinDistance(new Double2D(loc), 0.5);
-
-		for (int i = 0; i < nearby.numObjs; i++) {
-			Object obj = nearby.objs[i];
-
-			if (obj instanceof Ghost)
-			{
-				// Ghost found!
-				result = true;
-			
-				// Now let's check for an extra: If the ghost if frightened, let's try to eat him!
-				Ghost ghost = (Ghost) obj;
-				if (ghost.frightened > 0) {
-					// Way is clear, Pac! ;)
-					result = false;	
+		// the tiles the old Continuous2D query at distance 0.5 went through
+		return checkForGhosts((int) Math.floor(location.x - 1.5), (int) Math.floor(location.y - 1.5),
+				(int) Math.floor(location.x + 1.5), (int) Math.floor(location.y + 1.5));
+	}
+
+	/**
+	 * Same as checkForGhosts(Double2D), for a whole grid location (x, y). We look at every ghost
+	 * on the tiles from 2 to the left/up to 1 to the right/down of it, which we get out of the
+	 * occupancy index, so this is just a few array reads.
+	 * 
+	 * @param x X coordinate of the location.
+	 * @param y Y coordinate of the location.
+	 * 
+	 * @return Returns a boolean. True if there are some bad ghost(s) and false if there isn't/aren't.
+	 */
+	public boolean checkForGhosts (int x, int y) {
+		return checkForGhosts(x - 2, y - 2, x + 1, y + 1);
+	}
+
+	/**
+	 * Goes through the ghosts on the tiles minX ... maxX, minY ... maxY of the occupancy index, looking for
+	 * ones which aren't frightened.
+	 */
+	boolean checkForGhosts (int minX, int minY, int maxX, int maxY) {
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				for (int slot = occupancy.getFirstGhost(x, y); slot >= 0; slot = occupancy.getNext(slot)) {
+					// If the ghost is frightened, let's try to eat him! Otherwise: get the hell out of there.
+					if (((Ghost) occupancy.getAgent(slot)).frightened <= 0) {
+						return true;
+					}
 				}
-			} 
-			// If there is at least one Ghost at the location: get the hell out of there - and out of this
-			// iteration because we no longer care about any other Ghosts! Just run!
-			if (result) {
-				break;
 			}
 		}
+		return false;
+	}
+
+	/**
+	 * Looks in all four directions at once, at vision 1 and 2, and returns what it saw packed into an int, so
+	 * that deciding where to go doesn't allocate anything. It sees exactly what getNorth, getEast, getSouth and
+	 * getWest see (and marks sensEnv the same way), but reads the maze, the dots and the occupancy index
+	 * directly, and finds the ghosts which aren't frightened only once.
+	 * 
+	 * The byte (8 * direction) of the result holds, for the direction N, E, S or W:
+	 * bits 0-1: what getNorth(1) etc. would return, 0 (wall or ghost), 1 (free) or 2 (dot).
+	 * bit 2: set if there's no ghost at vision 2, i.e. getNorth(2) etc. would return 1 rather than 0.
+	 * Use near(...) and far(...) to take them apart.
+	 * 
+	 * @return The packed perceptions.
+	 */
+	public int look() {
+		int x = positionPacX;
+		int y = positionPacY;
+		int width = graph.getWidth();
+
+		// where are the ghosts we should be afraid of?  With a crowd of them, only those near enough to matter
+		int numGhosts = 0;
+		if (ghostX.length < occupancy.numAgents) {
+			ghostX = new int[occupancy.numAgents];
+			ghostY = new int[occupancy.numAgents];
+		}
+		if (occupancy.numAgents <= LOOK_ALL) {
+			for (int slot = 0; slot < occupancy.numAgents; slot++) {
+				Agent agent = occupancy.agents[slot];
+				int tile = occupancy.tiles[slot];
+				if (tile >= 0 && agent instanceof Ghost && ((Ghost) agent).frightened <= 0) {
+					ghostX[numGhosts] = tile % width;
+					ghostY[numGhosts] = tile / width;
+					numGhosts++;
+				}
+			}
+		} else {
+			// vision 2 plus the tiles ghostNear looks at, and the far side of the maze when that wraps around
+			numGhosts = gatherGhosts(x - 4, y - 4, x + 3, y + 3, numGhosts);
+			if (x - 4 < 0) numGhosts = gatherGhosts(width + x - 4, y - 4, width - 1, y + 3, numGhosts);
+			if (x + 3 >= width) numGhosts = gatherGhosts(0, y - 4, x + 3 - width, y + 3, numGhosts);
+		}
+
+		int result = 0;
+		for (int direction = Agent.N; direction <= Agent.W; direction++) {
+			// the locations at vision 1 and 2, wrapping around east and west like getEast and getWest do
+			int x1 = x, y1 = y, x2 = x, y2 = y;
+			switch (direction) {
+			case Agent.N: y1 = y - 1; y2 = y - 2; break;
+			case Agent.E: x1 = (x == width - 1 ? 0 : x + 1); x2 = (x == width - 1 ? 1 : x + 2); break;
+			case Agent.S: y1 = y + 1; y2 = y + 2; break;
+			case Agent.W: x1 = (x == 0 ? width - 1 : x - 1); x2 = (x == 0 ? width - 2 : x - 2); break;
+			}
+
+			int near;
+			if (graph.isWall(x1, y1)) {
+				sensEnv.set(x1, y1, ExplorationMap.WALL);
+				near = 0;
+			} else {
+				sensEnv.set(x1, y1, ExplorationMap.PATH);
+				near = dots.isDot(x1, y1) ? 2 : 1;
+				if (ghostNear(x1, y1, numGhosts)) near = 0;
+			}
+			int far = ghostNear(x2, y2, numGhosts) ? 0 : 4;
+			result |= (near | far) << (8 * direction);
+		}
 		return result;
 	}
 
+	/**
+	 * Up to this many agents, look() just goes through all of them rather than asking the occupancy index.
+	 */
+	static final int LOOK_ALL = 16;
+
+	// The tiles of the ghosts look() is afraid of
+	int[] ghostX = new int[LOOK_ALL];
+	int[] ghostY = new int[LOOK_ALL];
+
+	/**
+	 * Adds the tiles of the ghosts which aren't frightened on the tiles minX ... maxX, minY ... maxY to ghostX
+	 * and ghostY, after the first numGhosts, and returns how many there are now.
+	 */
+	int gatherGhosts(int minX, int minY, int maxX, int maxY, int numGhosts) {
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				for (int slot = occupancy.getFirstGhost(x, y); slot >= 0; slot = occupancy.getNext(slot)) {
+					if (((Ghost) occupancy.getAgent(slot)).frightened <= 0) {
+						ghostX[numGhosts] = x;
+						ghostY[numGhosts] = y;
+						numGhosts++;
+					}
+				}
+			}
+		}
+		return numGhosts;
+	}
+
+	/**
+	 * Same as checkForGhosts(x, y), for the first numGhosts ghosts in ghostX and ghostY.
+	 */
+	boolean ghostNear(int x, int y, int numGhosts) {
+		for (int i = 0; i < numGhosts; i++) {
+			int dx = ghostX[i] - x;
+			int dy = ghostY[i] - y;
+			if (dx >= -2 && dx <= 1 && dy >= -2 && dy <= 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return What look() saw in the given direction at vision 1: 0 (wall or ghost), 1 (free) or 2 (dot).
+	 */
+	public static int near(int look, int direction) {
+		return (look >>> (8 * direction)) & 3;
+	}
+
+	/**
+	 * @return What look() saw in the given direction at vision 2: 0 (ghost) or 1 (free).
+	 */
+	public static int far(int look, int direction) {
+		return (look >>> (8 * direction + 2)) & 1;
+	}
+
 	/**
 	 * This function checks a location north of Pac.
 	 * 
@@ -224,13 +337,13 @@ public class Sensor {
 
 
 		if (vision == 1) {
-			if (umfeld[(int) location.x][(int) location.y] == 1) { // we have a wall
+			if (graph.isWall((int) location.x, (int) location.y)) { // we have a wall
 				//save in an Array, that the spot is unsteppable	
-				sensEnv [(int) location.x][(int) location.y] = 1;
+				sensEnv.set((int) location.x, (int) location.y, ExplorationMap.WALL);
 				return result = 0.0;
 			}
 			//If there's no wall in this direction save it in an Array.
-			sensEnv [(int) location.x][(int) location.y] = 2;
+			sensEnv.set((int) location.x, (int) location.y, ExplorationMap.PATH);
 				
 			// if we don't have a wall, check for coins at the specified location
 			// first check for the dots - they are the most liked by Pac.
@@ -269,9 +382,9 @@ public class Sensor {
 		// This part of the code is to fix the problem when Pac is at the right border of the map. Without
 		// it, it would result in an ArrayOutOfBoundsException. Therefore we correct the location values so that
 		// Pac can look what he can expect on the other side.
-		if (positionPacX == 27 && vision == 1) {
+		if (positionPacX == graph.getWidth() - 1 && vision == 1) {
 			location = new Double2D(0.0, positionPacY);
-		} else if ( positionPacX == 27 && vision == 2) {
+		} else if ( positionPacX == graph.getWidth() - 1 && vision == 2) {
 			location = new Double2D(1.0, positionPacY);
 		} else {
 			location = new Double2D (positionPacX + vision, positionPacY);
@@ -279,13 +392,13 @@ public class Sensor {
 		}
 
 		if (vision == 1) {
-			if (umfeld[(int) location.x][(int) location.y] == 1) { // we have a wall
+			if (graph.isWall((int) location.x, (int) location.y)) { // we have a wall
 				//save in an Array, that the spot is unsteppable	
-				sensEnv [(int) location.x][(int) location.y] = 1;
+				sensEnv.set((int) location.x, (int) location.y, ExplorationMap.WALL);
 				return result = 0.0;
 			}
 			//If there's no wall in this direction save it in an Array.
-			sensEnv [(int) location.x][(int) location.y] = 2;
+			sensEnv.set((int) location.x, (int) location.y, ExplorationMap.PATH);
 			
 			// if we don't have a wall, check for coins at the specified location	
 			// first check for the dots - they are the most liked by Pac.
@@ -324,14 +437,14 @@ public class Sensor {
 		Double2D location = new Double2D (positionPacX, positionPacY + vision);
 
 		if (vision == 1) {
-			if (umfeld[(int) location.x][(int) location.y] == 1) { // we have a wall
+			if (graph.isWall((int) location.x, (int) location.y)) { // we have a wall
 				//write in an Array, that the spot is unsteppable	
-				sensEnv [(int) location.x][(int) location.y] = 1;
+				sensEnv.set((int) location.x, (int) location.y, ExplorationMap.WALL);
 
 			return result = 0.0;
 			}
 			//If there's no wall in this direction save it in an Array.
-			sensEnv [(int) location.x][(int) location.y] = 2;
+			sensEnv.set((int) location.x, (int) location.y, ExplorationMap.PATH);
 			
 			// if we don't have a wall, check for coins at the specified location
 			// first check for the dots - they are the most liked by Pac.
@@ -382,13 +495,13 @@ public class Sensor {
 		}
 
 		if (vision == 1) {
-			if (umfeld[(int) location.x][(int) location.y] == 1) { // we have a wall
+			if (graph.isWall((int) location.x, (int) location.y)) { // we have a wall
 				//save in an Array, that the spot is steppable	(if we don't have a wall)
-				sensEnv [(int) location.x][(int) location.y] = 1;
+				sensEnv.set((int) location.x, (int) location.y, ExplorationMap.WALL);
 				return result = 0.0;
 			}
 			//If there's no wall in this direction save it in an Array.
-			sensEnv [(int) location.x][(int) location.y] = 2;
+			sensEnv.set((int) location.x, (int) location.y, ExplorationMap.PATH);
 			
 			// if we don't have a wall, check for coins at the specified location
 			// first check for the dots - they are the most liked by Pac.
@@ -0,0 +1,259 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import ec.util.*;
+
+/** A Snapshot holds the full state of a running PacMan game, so that the game can later be put back to
+    that point with PacMan.restore(...).  This is what lookahead Pacs and forked experiments need, and it
+    has to be fast: rather than serializing the SimState we copy the few things that change during a game
+    into flat arrays.  Those are the schedule time, the counters and the score, the random number generators,
+    the dots, Pac's memory of the maze (sensEnv), the agents, and the pending events on the schedule.
+
+    <p>The state of each agent (see Agent.saveState(...)) is Agent.STATE_SIZE ints in agentState, in the
+    order of the agents' slots in the model's Occupancy.  The agent objects themselves are kept too, since
+    the pending events refer to them: restoring puts those same objects back, even if the model has made
+    new agents in the meantime.  Likewise the pending events are copied with Event.copy() both on the way
+    in and on the way out, so a snapshot can be restored as many times as you like.
+
+    <p>A snapshot only makes sense for the game it was taken from, and only until that game is started again.
+    It can also be copied into another game with the same kinds of agents, see restoreInto(...).
+    A snapshot may be reused with PacMan.snapshot(Snapshot), which doesn't allocate arrays again unless
+    it has to.
+*/
+
+public class Snapshot
+    {
+    /** The game the snapshot was taken from, and its agents field, which start() replaces. */
+    PacMan pacman;
+    Object agentsField;
+
+    double time;
+    long steps;
+    boolean agentsScheduled;
+    double agentsScheduledAt;
+
+    int deaths;
+    int level;
+    int score;
+    int countedSteps;
+    int levelsWon;
+    boolean frightenGhosts;
+    int[] actions;
+
+    MazeGraph graph;
+    MersenneTwisterFast random;
+    MersenneTwisterFast policyRandom;
+    DotField dots;
+    ExplorationMap sensEnv;
+
+    Pac[] pacs;
+    Ghost[] ghosts;
+
+    /** The agents by occupancy slot, and their state, Agent.STATE_SIZE ints each. */
+    int numAgents;
+    Agent[] agents;
+    int[] agentState;
+    /** Whether each agent was in the model's agents field, which the dying Pac's ghosts are not. */
+    boolean[] inField;
+
+    int numEvents;
+    PacMan.Event[] events;
+
+    /** Returns the schedule time of the snapshot. */
+    public double getTime() { return time; }
+
+    /** Returns the score at the time of the snapshot. */
+    public int getScore() { return score; }
+
+    /** Copies the state of the given game into the snapshot. */
+    void save(PacMan pacman)
+        {
+        this.pacman = pacman;
+        agentsField = pacman.agents;
+
+        time = pacman.schedule.getTime();
+        steps = pacman.schedule.getSteps();
+        agentsScheduled = pacman.agentsScheduled;
+        agentsScheduledAt = pacman.agentsScheduledAt;
+
+        deaths = pacman.deaths;
+        level = pacman.level;
+        score = pacman.score;
+        countedSteps = pacman.countedSteps;
+        levelsWon = pacman.levelsWon;
+        frightenGhosts = pacman.frightenGhosts;
+        actions = copy(pacman.actions, actions);
+
+        graph = pacman.graph;
+        random = (MersenneTwisterFast)(pacman.random.clone());
+        policyRandom = (MersenneTwisterFast)(pacman.policyRandom.clone());
+        if (dots == null) dots = new DotField(pacman.dots);
+        else dots.setTo(pacman.dots);
+
+        if (sensEnv == null || sensEnv.getWidth() != pacman.sensEnv.getWidth() || sensEnv.getHeight() != pacman.sensEnv.getHeight())
+            sensEnv = new ExplorationMap(pacman.sensEnv);
+        else sensEnv.setTo(pacman.sensEnv);
+
+        pacs = (Pac[]) copy(pacman.pacs, pacs);
+        ghosts = (Ghost[]) copy(pacman.ghosts, ghosts);
+
+        Occupancy occupancy = pacman.occupancy;
+        numAgents = occupancy.numAgents;
+        if (agents == null || agents.length < numAgents)
+            {
+            agents = new Agent[numAgents];
+            agentState = new int[numAgents * Agent.STATE_SIZE];
+            inField = new boolean[numAgents];
+            }
+        for(int i = 0; i < numAgents; i++)
+            {
+            agents[i] = occupancy.getAgent(i);
+            agents[i].saveState(agentState, i * Agent.STATE_SIZE);
+            inField[i] = pacman.agents.getObjectLocation(agents[i]) != null;
+            }
+
+        numEvents = pacman.pending.size();
+        if (events == null || events.length < numEvents) events = new PacMan.Event[numEvents];
+        for(int i = 0; i < numEvents; i++)
+            events[i] = pacman.pending.get(i).copy();
+        }
+
+    /** Puts the given game back into the state of the snapshot, including its schedule. */
+    void restore(PacMan pacman)
+        {
+        if (pacman != this.pacman || pacman.agents != agentsField)
+            throw new RuntimeException("This snapshot was not taken from this game, or the game has been started again since.");
+
+        pacman.deaths = deaths;
+        pacman.level = level;
+        pacman.score = score;
+        pacman.countedSteps = countedSteps;
+        pacman.levelsWon = levelsWon;
+        pacman.frightenGhosts = frightenGhosts;
+        pacman.actions = copy(actions, pacman.actions);
+
+        if (pacman.graph != graph)
+            {
+            pacman.graph = graph;
+            pacman.maze.setTo(graph.getField());
+            }
+        pacman.random = (MersenneTwisterFast)(random.clone());
+        pacman.policyRandom = (MersenneTwisterFast)(policyRandom.clone());
+        pacman.dots.setTo(dots);
+
+        pacman.sensEnv.setTo(sensEnv);
+
+        pacman.pacs = (Pac[]) copy(pacs, pacman.pacs);
+        pacman.ghosts = (Ghost[]) copy(ghosts, pacman.ghosts);
+
+        // put the agents back where they were, in the same occupancy slots
+        pacman.agents.clear();
+        Occupancy occupancy = pacman.occupancy;
+        occupancy.clear();
+        for(int i = 0; i < numAgents; i++)
+            {
+            Agent agent = agents[i];
+            agent.slot = occupancy.add(agent);
+            agent.restoreState(agentState, i * Agent.STATE_SIZE);
+            if (!inField[i]) { pacman.agents.remove(agent); occupancy.remove(agent.slot); }
+            }
+
+        pacman.agentsScheduled = agentsScheduled;
+        pacman.agentsScheduledAt = agentsScheduledAt;
+        pacman.pending.clear();
+        for(int i = 0; i < numEvents; i++)
+            pacman.pending.add(events[i].copy());
+        pacman.rebuildSchedule(time, steps);
+        }
+
+    /** Puts a different game into the state of the snapshot, for instance a game used to try out what might happen
+        next.  The game must have been started.  agents holds its agents by occupancy slot, which must be of the same
+        kinds as the snapshot's, and stand in for them.  Events belong to the agents which scheduled them and can't
+        be moved to another game, so this only works if no events are pending: otherwise, or if the agents don't
+        match, nothing is changed and false is returned.  The game's schedule is left empty, with agentsScheduled
+        and agentsScheduledAt set: call rebuildSchedule(...) to set it up.
+
+        <p>Unlike restore(...) this doesn't need the snapshot to be taken between steps.  A Pac may take one of his
+        own game in the middle of his step, and then try out his choices on other games. */
+    boolean restoreInto(PacMan game, Agent[] agents)
+        {
+        if (numEvents > 0 || agents.length != numAgents) return false;
+        for(int i = 0; i < numAgents; i++)
+            if (!(agents[i].getClass() == this.agents[i].getClass() ||
+                    (agents[i] instanceof Pac && this.agents[i] instanceof Pac)))
+                return false;
+
+        game.deaths = deaths;
+        game.level = level;
+        game.score = score;
+        game.countedSteps = countedSteps;
+        game.levelsWon = levelsWon;
+        game.frightenGhosts = frightenGhosts;
+        game.fixedGhostOrder = pacman.fixedGhostOrder;
+        game.frontierPlanning = pacman.frontierPlanning;
+        game.actions = copy(actions, game.actions);
+
+        if (game.graph != graph)
+            {
+            game.graph = graph;
+            game.maze.setTo(graph.getField());
+            }
+        game.random = (MersenneTwisterFast)(random.clone());
+        game.policyRandom = (MersenneTwisterFast)(policyRandom.clone());
+        game.dots.setTo(dots);
+
+        game.sensEnv.setTo(sensEnv);
+
+        if (game.pacs == null || game.pacs.length != pacs.length) game.pacs = new Pac[pacs.length];
+        for(int i = 0; i < pacs.length; i++)
+            game.pacs[i] = (Pac) standIn(pacs[i], agents);
+        if (game.ghosts == null || game.ghosts.length != ghosts.length) game.ghosts = new Ghost[ghosts.length];
+        for(int i = 0; i < ghosts.length; i++)
+            game.ghosts[i] = (Ghost) standIn(ghosts[i], agents);
+
+        game.clearSchedule();
+        game.agents.clear();
+        Occupancy occupancy = game.occupancy;
+        occupancy.clear();
+        for(int i = 0; i < numAgents; i++)
+            {
+            Agent agent = agents[i];
+            agent.slot = occupancy.add(agent);
+            agent.restoreState(agentState, i * Agent.STATE_SIZE);
+            if (!inField[i]) { game.agents.remove(agent); occupancy.remove(agent.slot); }
+            }
+        game.agentsScheduled = agentsScheduled;
+        game.agentsScheduledAt = agentsScheduledAt;
+        return true;
+        }
+
+    /** Returns the agent among agents in the same slot as the given agent of the snapshot. */
+    Agent standIn(Agent agent, Agent[] agents)
+        {
+        if (agent == null) return null;
+        for(int i = 0; i < numAgents; i++)
+            if (this.agents[i] == agent) return agents[i];
+        throw new RuntimeException("Agent " + agent + " is not in the snapshot.");  // never happens
+        }
+
+    /** Copies from into to, reusing to if it's the right length. */
+    static int[] copy(int[] from, int[] to)
+        {
+        if (to == null || to.length != from.length) to = new int[from.length];
+        System.arraycopy(from, 0, to, 0, from.length);
+        return to;
+        }
+
+    /** Copies from into to, reusing to if it's the right length and type. */
+    static Object[] copy(Object[] from, Object[] to)
+        {
+        if (to == null || to.length != from.length || to.getClass() != from.getClass())
+            to = (Object[])(java.lang.reflect.Array.newInstance(from.getClass().getComponentType(), from.length));
+        System.arraycopy(from, 0, to, 0, from.length);
+        return to;
+        }
+    }
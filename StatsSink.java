@@ -0,0 +1,264 @@
+/*
+  Copyright 2009  by Sean Luke and Vittorio Zipparo
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.app.pacman;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+/** A StatsSink collects a record of every death and every won level, from any number of games at once, and writes
+    them to a file on a background thread.  Games only add their records to a lock-free queue, so they never wait on
+    the file, on each other, or on System.out.  The writer thread takes them off in batches.
+
+    <p>The file is either CSV, with a header line, or (if its name ends in .pacs) a compact binary file which is
+    written column by column, a block per batch:
+
+    <pre>
+    "PACS" (4 bytes), version (int)
+    then blocks of: n (int), kind[n] (byte), seed[n] (long), level[n], maze[n], deaths[n], score[n],
+                    countedSteps[n], levelsWon[n], mazeWidth[n], mazeHeight[n] (int), mazeSeed[n] (long)
+    </pre>
+
+    all big-endian as DataOutputStream writes them.  read(...) reads either kind, and
+    <tt>java sim.app.pacman.StatsSink file.pacs</tt> prints a binary file as CSV.
+
+    <p>maze is the index of the maze.  On the classic mazes mazeWidth and mazeHeight are 0; on generated ones (see
+    PacMan.mazeWidth) they are its size, and the maze is the one MazeGenerator makes from mazeSeed + maze.
+
+    <p>Give a sink to PacMan.stats, or run PacManBatch with -stats FILE.  close() it when the games are done: that
+    writes what's left and closes the file.
+*/
+
+public class StatsSink implements AutoCloseable
+    {
+    /** The kind of a record of a death. */
+    public static final byte DEATH = 0;
+    /** The kind of a record of a won level. */
+    public static final byte LEVEL_WON = 1;
+
+    static final int MAGIC = 0x50414353;    // "PACS"
+    static final int VERSION = 1;
+
+    /** The largest number of records written at once. */
+    public static final int BATCH = 4096;
+
+    /** What the game was like at a death or a won level. */
+    public static class Record implements java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        public byte kind;
+        public long seed;
+        public int level;
+        public int maze;
+        public int deaths;
+        public int score;
+        public int countedSteps;
+        public int levelsWon;
+        public int mazeWidth;
+        public int mazeHeight;
+        public long mazeSeed;
+
+        public Record() { }
+
+        /** Makes a record of the given kind of the given game as it is now. */
+        public Record(byte kind, PacMan pacman)
+            {
+            this.kind = kind;
+            seed = pacman.seed();
+            level = pacman.level;
+            maze = (pacman.level - 1) % pacman.MAX_MAZES;
+            deaths = pacman.deaths;
+            score = pacman.score;
+            countedSteps = pacman.countedSteps;
+            levelsWon = pacman.levelsWon;
+            mazeWidth = pacman.mazeWidth;
+            mazeHeight = pacman.mazeHeight;
+            mazeSeed = pacman.mazeSeed;
+            }
+
+        public String toString()
+            {
+            return (kind == DEATH ? "death" : "level") + "," + seed + "," + level + "," + maze + "," + deaths + "," +
+                score + "," + countedSteps + "," + levelsWon + "," + mazeWidth + "," + mazeHeight + "," + mazeSeed;
+            }
+        }
+
+    /** The header line of a CSV file. */
+    public static final String CSV_HEADER = "kind,seed,level,maze,deaths,score,countedSteps,levelsWon,mazeWidth,mazeHeight,mazeSeed";
+
+    final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<Record>();
+    final boolean binary;
+    final DataOutputStream out;
+    final Thread writer;
+    volatile boolean closed;
+    volatile IOException failure;
+
+    /** Opens the file for writing, binary if its name ends in .pacs, else CSV, and starts the writer thread. */
+    public StatsSink(File file) throws IOException
+        {
+        binary = file.getName().endsWith(".pacs");
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        if (binary)
+            {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            }
+        else out.writeBytes(CSV_HEADER + "\n");
+
+        writer = new Thread(new Runnable() { public void run() { write(); } }, "StatsSink " + file.getName());
+        writer.setDaemon(true);
+        writer.start();
+        }
+
+    /** Adds a record of the given kind of the given game.  Never blocks. */
+    public void record(byte kind, PacMan pacman)
+        {
+        add(new Record(kind, pacman));
+        }
+
+    /** Adds a record.  Never blocks.  Records added after close() are dropped. */
+    public void add(Record record)
+        {
+        if (closed) return;
+        queue.add(record);
+        }
+
+    /** The writer thread: writes what's queued, in batches, until the sink is closed and the queue is empty. */
+    void write()
+        {
+        Record[] batch = new Record[BATCH];
+        try
+            {
+            while(true)
+                {
+                boolean done = closed;          // read before draining, so nothing added before close() is missed
+                int n = 0;
+                Record record;
+                while(n < BATCH && (record = queue.poll()) != null)
+                    batch[n++] = record;
+                if (n > 0) write(batch, n);
+                else if (done) break;
+                else LockSupport.parkNanos(this, 50000000L);    // nothing to do for a while: 50 ms
+                }
+            out.flush();
+            }
+        catch (IOException e) { failure = e; }
+        finally
+            {
+            try { out.close(); }
+            catch (IOException e) { if (failure == null) failure = e; }
+            }
+        }
+
+    void write(Record[] batch, int n) throws IOException
+        {
+        if (!binary)
+            {
+            for(int i = 0; i < n; i++)
+                out.writeBytes(batch[i] + "\n");
+            return;
+            }
+        out.writeInt(n);
+        for(int i = 0; i < n; i++) out.writeByte(batch[i].kind);
+        for(int i = 0; i < n; i++) out.writeLong(batch[i].seed);
+        for(int i = 0; i < n; i++) out.writeInt(batch[i].level);
+        for(int i = 0; i < n; i++) out.writeInt(batch[i].maze);
+        for(int i = 0; i < n; i++) out.writeInt(batch[i].deaths);
+        for(int i = 0; i < n; i++) out.writeInt(batch[i].score);
+        for(int i = 0; i < n; i++) out.writeInt(batch[i].countedSteps);
+        for(int i = 0; i < n; i++) out.writeInt(batch[i].levelsWon);
+        for(int i = 0; i < n; i++) out.writeInt(batch[i].mazeWidth);
+        for(int i = 0; i < n; i++) out.writeInt(batch[i].mazeHeight);
+        for(int i = 0; i < n; i++) out.writeLong(batch[i].mazeSeed);
+        }
+
+    /** Writes what's left, closes the file, and waits for the writer thread to finish.  Throws any
+        IOException the writer ran into. */
+    public void close() throws IOException
+        {
+        closed = true;
+        LockSupport.unpark(writer);
+        try { writer.join(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        if (failure != null) throw failure;
+        }
+
+    /** Reads a file written by a StatsSink, CSV or binary. */
+    public static List<Record> read(File file) throws IOException
+        {
+        ArrayList<Record> records = new ArrayList<Record>();
+        if (file.getName().endsWith(".pacs"))
+            {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+                {
+                if (in.readInt() != MAGIC) throw new IOException(file + " is not a stats file");
+                if (in.readInt() != VERSION) throw new IOException(file + " is of an unknown version");
+                while(true)
+                    {
+                    int n;
+                    try { n = in.readInt(); }
+                    catch (EOFException e) { break; }
+                    Record[] batch = new Record[n];
+                    for(int i = 0; i < n; i++) { batch[i] = new Record(); batch[i].kind = in.readByte(); }
+                    for(int i = 0; i < n; i++) batch[i].seed = in.readLong();
+                    for(int i = 0; i < n; i++) batch[i].level = in.readInt();
+                    for(int i = 0; i < n; i++) batch[i].maze = in.readInt();
+                    for(int i = 0; i < n; i++) batch[i].deaths = in.readInt();
+                    for(int i = 0; i < n; i++) batch[i].score = in.readInt();
+                    for(int i = 0; i < n; i++) batch[i].countedSteps = in.readInt();
+                    for(int i = 0; i < n; i++) batch[i].levelsWon = in.readInt();
+                    for(int i = 0; i < n; i++) batch[i].mazeWidth = in.readInt();
+                    for(int i = 0; i < n; i++) batch[i].mazeHeight = in.readInt();
+                    for(int i = 0; i < n; i++) batch[i].mazeSeed = in.readLong();
+                    records.addAll(Arrays.asList(batch));
+                    }
+                }
+            finally { in.close(); }
+            }
+        else
+            {
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            try
+                {
+                String line = in.readLine();            // the header
+                while((line = in.readLine()) != null)
+                    {
+                    String[] f = line.split(",");
+                    Record record = new Record();
+                    record.kind = f[0].equals("death") ? DEATH : LEVEL_WON;
+                    record.seed = Long.parseLong(f[1]);
+                    record.level = Integer.parseInt(f[2]);
+                    record.maze = Integer.parseInt(f[3]);
+                    record.deaths = Integer.parseInt(f[4]);
+                    record.score = Integer.parseInt(f[5]);
+                    record.countedSteps = Integer.parseInt(f[6]);
+                    record.levelsWon = Integer.parseInt(f[7]);
+                    record.mazeWidth = Integer.parseInt(f[8]);
+                    record.mazeHeight = Integer.parseInt(f[9]);
+                    record.mazeSeed = Long.parseLong(f[10]);
+                    records.add(record);
+                    }
+                }
+            finally { in.close(); }
+            }
+        return records;
+        }
+
+    /** Prints the given stats files as CSV. */
+    public static void main(String[] args) throws IOException
+        {
+        System.out.println(CSV_HEADER);
+        for(int i = 0; i < args.length; i++)
+            {
+            List<Record> records = read(new File(args[i]));
+            for(int j = 0; j < records.size(); j++)
+                System.out.println(records.get(j));
+            }
+        }
+    }